@@ -0,0 +1,14 @@
+package com.github.mybatis.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 被注解的统计方法直接读取表的统计信息(估算的行数)，数据库不支持时执行原来的count语句
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface EstimatedCount {
+}
@@ -0,0 +1,18 @@
+package com.github.mybatis.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 被注解的Mapper方法只查询指定的属性，适用于CrudProvider中参数为Map的查询(findAllWith, findById, findByIds, findByPage)
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Projection {
+  /**
+   * 实体的属性名
+   */
+  String[] value();
+}
@@ -0,0 +1,15 @@
+package com.github.mybatis.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 被注解的查询(或者mapper接口里的所有查询)总是读主库，例如对复制延迟敏感的查询。
+ * 读主库不算写入，不会延长读写分离的粘滞时间
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface ReadFromMaster {
+}
@@ -0,0 +1,14 @@
+package com.github.mybatis.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 被注解的查询(或者mapper接口里的所有查询)读从库，不再按sql判断；写语句上的注解会被忽略
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface ReadFromReplica {
+}
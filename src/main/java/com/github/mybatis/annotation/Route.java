@@ -0,0 +1,19 @@
+package com.github.mybatis.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 被注解的查询(或者mapper接口里的所有查询)使用DynamicDataSource中配置的命名读库，例如报表专用的读库。
+ * 没有配置这个名字时按普通查询读从库，写语句上的注解会被忽略
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface Route {
+  /**
+   * 读库的名字，对应配置中pools列出的名字
+   */
+  String value();
+}
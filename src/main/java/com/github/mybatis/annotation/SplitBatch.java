@@ -0,0 +1,14 @@
+package com.github.mybatis.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 被注解的Mapper方法，集合参数(@Param(CrudProvider.LIST_KEY))会按行数和数据包大小拆分成多条语句执行
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface SplitBatch {
+}
@@ -0,0 +1,28 @@
+package com.github.mybatis.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * 记录修改的实体基类：查询出来的实体会保存各列取值的快照，update时只写入和快照不同的列(包括改成null的列)，
+ * 没有修改时不执行update语句
+ */
+public abstract class TrackedEntity extends IdEntity {
+  /**
+   * 与PersistMeta.getColumnNames()一一对应的列取值，为空表示不是从数据库加载的，update时写入所有非空列
+   */
+  private transient Object[] snapshot;
+
+  @JsonIgnore
+  public Object[] getSnapshot() {
+    return snapshot;
+  }
+
+  public void setSnapshot(Object[] snapshot) {
+    this.snapshot = snapshot;
+  }
+
+  @JsonIgnore
+  public boolean isTracked() {
+    return snapshot != null;
+  }
+}
@@ -0,0 +1,76 @@
+package com.github.mybatis.interceptor;
+
+import com.github.mybatis.entity.IdEntity;
+import com.github.mybatis.provider.CrudProvider;
+import com.github.mybatis.util.CloseableUtil;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.ExecutorException;
+import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 多行INSERT语句的主键回填，mybatis自带的Jdbc3KeyGenerator只处理单个参数对象
+ */
+class BatchKeyGenerator extends Jdbc3KeyGenerator {
+  static final BatchKeyGenerator INSTANCE = new BatchKeyGenerator();
+  private static final Logger LOG = LoggerFactory.getLogger(BatchKeyGenerator.class);
+
+  @Override
+  public void processAfter(Executor executor, MappedStatement ms, Statement stmt, Object parameter) {
+    processRows(ms, stmt, getRows(parameter));
+  }
+
+  @Override
+  public void processBatch(MappedStatement ms, Statement stmt, List<Object> parameters) {
+    for (Object parameter : parameters) {
+      processRows(ms, stmt, getRows(parameter));
+    }
+  }
+
+  private void processRows(MappedStatement ms, Statement stmt, Collection<?> rows) {
+    if (rows == null || rows.isEmpty()) {
+      return;
+    }
+    ResultSet rs = null;
+    int assigned = 0;
+    try {
+      rs = stmt.getGeneratedKeys();
+      Iterator<?> it = rows.iterator();
+      while (it.hasNext() && rs.next()) {
+        Object row = it.next();
+        if (row instanceof IdEntity) {
+          ((IdEntity) row).setId(rs.getLong(1));
+        }
+        assigned++;
+      }
+    } catch (Exception e) {
+      throw new ExecutorException("Error getting generated key or setting result to parameter object. Cause: " + e, e);
+    } finally {
+      CloseableUtil.closeQuietly(rs);
+    }
+    if (assigned < rows.size()) {
+      LOG.warn("{}: driver returned {} generated keys for {} rows", ms.getId(), assigned, rows.size());
+    }
+  }
+
+  private Collection<?> getRows(Object parameter) {
+    if (parameter instanceof Map) {
+      Object rows = ((Map) parameter).get(CrudProvider.LIST_KEY);
+      if (rows instanceof Collection) {
+        return (Collection<?>) rows;
+      }
+    } else if (parameter instanceof Collection) {
+      return (Collection<?>) parameter;
+    }
+    return null;
+  }
+}
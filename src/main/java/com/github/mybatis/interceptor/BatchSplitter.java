@@ -0,0 +1,194 @@
+package com.github.mybatis.interceptor;
+
+import com.github.mybatis.entity.IdEntity;
+import com.github.mybatis.util.EntityUtil;
+import com.github.mybatis.util.PersistMeta;
+import com.github.mybatis.util.ReflectionUtil;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.lang.reflect.Field;
+import java.util.*;
+
+/**
+ * 把批量写入的数据按分表后缀和非空列分组，再按行数和估算的数据包大小拆分成多批；
+ * 把主键列表拆分成长度规范化的IN列表
+ */
+final class BatchSplitter {
+  /**
+   * 语句头部(INSERT INTO t (...) VALUES)预留的字节数
+   */
+  private static final int HEADER_BYTES = 1024;
+
+  private BatchSplitter() {
+  }
+
+  static List<List<Object>> split(Collection<?> rows, int maxRows, long maxBytes) {
+    List<List<Object>> batches = Lists.newArrayList();
+    for (List<Object> group : groupRows(rows)) {
+      PersistMeta meta = EntityUtil.getMeta(group.get(0).getClass());
+      List<Object> batch = Lists.newArrayListWithCapacity(Math.min(group.size(), maxRows));
+      long bytes = HEADER_BYTES;
+      for (Object row : group) {
+        long size = estimateSize(meta, row);
+        if (!batch.isEmpty() && (batch.size() >= maxRows || bytes + size > maxBytes)) {
+          batches.add(batch);
+          batch = Lists.newArrayListWithCapacity(Math.min(group.size(), maxRows));
+          bytes = HEADER_BYTES;
+        }
+        batch.add(row);
+        bytes += size;
+      }
+      batches.add(batch);
+    }
+    return batches;
+  }
+
+  /**
+   * 分表的实体需要按后缀分组，每组写入同一张表；
+   * 同一条语句只写入各行共同的非空列，非空列不同的行分到不同的组，空值列不会写成NULL
+   */
+  private static Collection<List<Object>> groupRows(Collection<?> rows) {
+    Object first = rows.iterator().next();
+    PersistMeta meta = EntityUtil.getMeta(first.getClass());
+    boolean sharded = meta.getPostfix() != null;
+    Map<GroupKey, List<Object>> groups = Maps.newLinkedHashMap();
+    for (Object row : rows) {
+      GroupKey key = new GroupKey(sharded ? meta.getPostfixValue(row) : null, EntityUtil.nonNullMask(meta, row));
+      List<Object> group = groups.get(key);
+      if (group == null) {
+        group = Lists.newArrayList();
+        groups.put(key, group);
+      }
+      group.add(row);
+    }
+    return groups.values();
+  }
+
+  private static final class GroupKey {
+    private final String postfix;
+    private final long[] mask;
+    private final int hash;
+
+    GroupKey(String postfix, long[] mask) {
+      this.postfix = postfix;
+      this.mask = mask;
+      this.hash = 31 * Arrays.hashCode(mask) + (postfix == null ? 0 : postfix.hashCode());
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof GroupKey)) {
+        return false;
+      }
+      GroupKey other = (GroupKey) obj;
+      return Arrays.equals(mask, other.mask) && (postfix == null ? other.postfix == null : postfix.equals(other.postfix));
+    }
+  }
+
+  /**
+   * 估算一行数据以文本形式发送时占用的字节数，按utf8每个字符3字节，并考虑转义和引号
+   */
+  static long estimateSize(PersistMeta meta, Object row) {
+    Field[] fields = meta.getFields();
+    long size = fields.length + 2;
+    for (Field field : fields) {
+      Object value = ReflectionUtil.getValue(field, row);
+      if (value == null) {
+        size += 4;
+      } else if (value instanceof CharSequence) {
+        size += ((CharSequence) value).length() * 3 + 2;
+      } else if (value instanceof byte[]) {
+        size += ((byte[]) value).length * 2 + 3;
+      } else if (value instanceof Number || value instanceof Boolean) {
+        size += 20;
+      } else if (value instanceof Date) {
+        size += 28;
+      } else {
+        size += String.valueOf(value).length() * 3 + 2;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * 去重后按maxSize拆分主键列表，每批的长度补齐到2的幂(不超过maxSize)，补齐时重复最后一个主键，
+   * 这样不同长度的请求只会生成少数几种sql，可以复用PreparedStatement缓存
+   */
+  static List<List<Object>> splitIds(Collection<?> ids, int maxSize) {
+    Set<Object> unique = new LinkedHashSet<Object>(ids);
+    List<List<Object>> batches = Lists.newArrayListWithCapacity(unique.size() / maxSize + 1);
+    List<Object> batch = null;
+    for (Object id : unique) {
+      if (batch == null || batch.size() >= maxSize) {
+        batch = Lists.newArrayListWithCapacity(maxSize);
+        batches.add(batch);
+      }
+      batch.add(id);
+    }
+    for (List<Object> i : batches) {
+      int size = i.size();
+      int padded = Math.min(size == 1 ? 1 : Integer.highestOneBit(size - 1) << 1, maxSize);
+      Object last = i.get(size - 1);
+      for (int j = size; j < padded; j++) {
+        i.add(last);
+      }
+    }
+    return batches;
+  }
+
+  /**
+   * 按主键列表的顺序排列查询结果，不存在的主键跳过。
+   * 结果按long主键排序后二分查找，避免为每个主键装箱
+   */
+  static List<Object> sortByIds(Collection<?> ids, List<Object> rows) {
+    int size = rows.size();
+    if (size == 0) {
+      return rows;
+    }
+    Object[] sorted = new Object[size];
+    for (int i = 0; i < size; i++) {
+      Object row = rows.get(i);
+      if (!(row instanceof IdEntity) || ((IdEntity) row).getId() == null) {
+        return rows;
+      }
+      sorted[i] = row;
+    }
+    Arrays.sort(sorted, new Comparator<Object>() {
+      @Override
+      public int compare(Object o1, Object o2) {
+        long a = ((IdEntity) o1).getId(), b = ((IdEntity) o2).getId();
+        return a < b ? -1 : (a == b ? 0 : 1);
+      }
+    });
+    long[] keys = new long[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = ((IdEntity) sorted[i]).getId();
+    }
+    List<Object> result = Lists.newArrayListWithCapacity(size);
+    boolean[] used = new boolean[size];
+    for (Object id : ids) {
+      long key;
+      if (id instanceof Number) {
+        key = ((Number) id).longValue();
+      } else {
+        try {
+          key = Long.parseLong(String.valueOf(id));
+        } catch (NumberFormatException e) {
+          continue;
+        }
+      }
+      int pos = Arrays.binarySearch(keys, key);
+      if (pos >= 0 && !used[pos]) {
+        used[pos] = true;
+        result.add(sorted[pos]);
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,115 @@
+package com.github.mybatis.interceptor;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Maps;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分页总行数的缓存，key为count语句和绑定的参数值，按过期时间和容量淘汰。
+ *
+ * 每张表有一个版本号，通过mybatis写入这张表时版本号加1，旧版本的缓存不再命中，等待自然淘汰。
+ * 不经过mybatis的写入只能等缓存过期
+ */
+public final class CountCache {
+  private final Cache<String, Integer> cache;
+  private final ConcurrentMap<String, AtomicLong> versions = Maps.newConcurrentMap();
+
+  public CountCache(long maximumSize, long expireSeconds) {
+    this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).expireAfterWrite(expireSeconds, TimeUnit.SECONDS).recordStats().build();
+  }
+
+  /**
+   * 生成缓存key
+   *
+   * @param table    实体对应的表名
+   * @param countSql count语句
+   * @param boundSql 原始语句，用来获取绑定的参数值
+   * @return
+   */
+  String key(String table, String countSql, Configuration conf, BoundSql boundSql) {
+    StringBuilder sbd = new StringBuilder(countSql.length() + 64);
+    sbd.append(table).append('#').append(version(table).get()).append('#').append(countSql);
+    Object parameterObject = boundSql.getParameterObject();
+    List<ParameterMapping> mappings = boundSql.getParameterMappings();
+    MetaObject metaObject = null;
+    for (ParameterMapping mapping : mappings) {
+      if (mapping.getMode() == ParameterMode.OUT) {
+        continue;
+      }
+      String property = mapping.getProperty();
+      Object value;
+      if (boundSql.hasAdditionalParameter(property)) {
+        value = boundSql.getAdditionalParameter(property);
+      } else if (parameterObject == null) {
+        value = null;
+      } else if (conf.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass())) {
+        value = parameterObject;
+      } else {
+        if (metaObject == null) {
+          metaObject = conf.newMetaObject(parameterObject);
+        }
+        value = metaObject.getValue(property);
+      }
+      sbd.append('\u0000').append(value);
+    }
+    return sbd.toString();
+  }
+
+  Integer get(String key) {
+    return cache.getIfPresent(key);
+  }
+
+  void put(String key, int count) {
+    cache.put(key, count);
+  }
+
+  /**
+   * 表中的数据有修改，之前缓存的行数都作废
+   *
+   * @param table
+   */
+  public void invalidate(String table) {
+    version(table).incrementAndGet();
+  }
+
+  private AtomicLong version(String table) {
+    AtomicLong version = versions.get(table);
+    if (version == null) {
+      versions.putIfAbsent(table, new AtomicLong());
+      version = versions.get(table);
+    }
+    return version;
+  }
+
+  /**
+   * 命中和未命中的统计信息
+   *
+   * @return
+   */
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  public long getHitCount() {
+    return cache.stats().hitCount();
+  }
+
+  public long getMissCount() {
+    return cache.stats().missCount();
+  }
+
+  public void clear() {
+    cache.invalidateAll();
+  }
+}
@@ -0,0 +1,490 @@
+package com.github.mybatis.interceptor;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 把分页查询改写成count语句。先做词法分析，只在最外层(不在括号里)识别from、where、group by等子句：
+ * <ul>
+ * <li>普通查询：去掉select列表和order by，去掉不会改变行数的left join</li>
+ * <li>distinct、group by、having、聚合函数、union或者自带limit的查询：包一层子查询再count</li>
+ * </ul>
+ * 改写结果按原始sql缓存，同一种语句只分析一次
+ */
+final class CountSqlBuilder {
+  private static final Cache<String, String> CACHE = CacheBuilder.newBuilder().maximumSize(10000).recordStats().build();
+  /**
+   * windowCount和foundRows的改写结果，windowCount按列名和sql缓存
+   */
+  private static final Cache<String, String> WINDOW_CACHE = CacheBuilder.newBuilder().maximumSize(10000).build();
+  private static final Cache<String, String> FOUND_ROWS_CACHE = CacheBuilder.newBuilder().maximumSize(10000).build();
+  /**
+   * 缓存里表示无法改写，改写结果不会是空串
+   */
+  private static final String UNSUPPORTED = "";
+  private static final Set<String> AGGREGATES = ImmutableSet.of("count", "sum", "avg", "min", "max", "group_concat",
+    "bit_and", "bit_or", "bit_xor", "std", "stddev", "variance");
+  /**
+   * 出现在from之后、会影响结果行数而无法直接改写的子句
+   */
+  private static final Set<String> TAIL = ImmutableSet.of("limit", "offset", "fetch", "for", "lock", "window");
+  private static final Set<String> SET_OPERATORS = ImmutableSet.of("union", "intersect", "except", "minus");
+  private static final Set<String> JOIN_START = ImmutableSet.of("left", "right", "inner", "join", "cross", "natural", "full", "straight_join");
+  /**
+   * 条件里不是列名的关键字，用来判断是否有没有带表别名的列
+   */
+  private static final Set<String> KEYWORDS = ImmutableSet.of("and", "or", "not", "in", "is", "null", "like", "between", "exists",
+    "case", "when", "then", "else", "end", "true", "false", "interval", "escape", "regexp", "rlike", "div", "mod", "xor",
+    "binary", "collate", "distinct", "all", "any", "some", "as", "unknown", "date", "time", "timestamp", "select", "from", "where");
+
+  private CountSqlBuilder() {
+  }
+
+  /**
+   * 生成count语句
+   *
+   * @param sql 原始sql语句
+   * @return
+   */
+  static String build(String sql) {
+    String count = CACHE.getIfPresent(sql);
+    if (count == null) {
+      count = rewrite(sql);
+      CACHE.put(sql, count);
+    }
+    return count;
+  }
+
+  static CacheStats stats() {
+    return CACHE.stats();
+  }
+
+  static String rewrite(String sql) {
+    List<Token> tokens = tokenize(sql);
+    int n = tokens.size();
+    int from = -1;
+    int where = -1;
+    int group = -1;
+    int having = -1;
+    int order = -1;
+    int tail = -1;
+    boolean distinct = false;
+    boolean aggregate = false;
+    boolean union = false;
+    int params = 0;
+    for (int i = 1; i < n; i++) {
+      Token t = tokens.get(i);
+      if (t.is("?") && (from < 0 || order >= 0)) {
+        params++;
+      }
+      if (t.depth != 0 || t.type != Token.WORD) {
+        continue;
+      }
+      String w = t.text;
+      if (from < 0) {
+        if ("from".equals(w)) {
+          from = i;
+        } else if (i == 1 && ("distinct".equals(w) || "distinctrow".equals(w))) {
+          distinct = true;
+        } else if (AGGREGATES.contains(w) && i + 1 < n && tokens.get(i + 1).is("(")) {
+          aggregate = true;
+        }
+      } else if (SET_OPERATORS.contains(w)) {
+        union = true;
+      } else if ("where".equals(w) && where < 0 && group < 0 && order < 0) {
+        where = i;
+      } else if ("group".equals(w) && group < 0 && order < 0) {
+        group = i;
+      } else if ("having".equals(w) && having < 0 && order < 0) {
+        having = i;
+      } else if ("order".equals(w) && order < 0) {
+        order = i;
+      } else if (TAIL.contains(w) && tail < 0) {
+        tail = i;
+      }
+    }
+    // select列表或者order by里有参数时不能去掉，否则参数的位置对不上
+    if (n == 0 || !tokens.get(0).is("select") || from < 0 || tail >= 0 || params > 0) {
+      return wrap(sql);
+    }
+    int end = order < 0 ? sql.length() : tokens.get(order).start;
+    if (union) {
+      return wrap(sql.substring(0, end));
+    }
+    if (distinct || aggregate || group >= 0 || having >= 0) {
+      if (group >= 0 && !distinct && having < 0) {
+        // 分组数和select列表无关
+        return wrap("select 1 " + sql.substring(tokens.get(from).start, end));
+      }
+      return wrap(sql.substring(0, end));
+    }
+    int fromEnd = where >= 0 ? where : (order >= 0 ? order : n);
+    int stop = order >= 0 ? order : n;
+    StringBuilder sbd = new StringBuilder(sql.length());
+    sbd.append("select count(0) ");
+    int pos = tokens.get(from).start;
+    for (int[] join : removableJoins(tokens, from, fromEnd, stop)) {
+      sbd.append(sql, pos, tokens.get(join[0]).start);
+      pos = join[1] < n ? tokens.get(join[1]).start : end;
+    }
+    sbd.append(sql, pos, end);
+    return trimRight(sbd);
+  }
+
+  /**
+   * 在最外层的select列表末尾加上count(*) over()，分页的limit和order by仍然作用在原语句上。
+   * 不能包一层子查询：子查询里的order by不保证保留到外层，分页结果可能错乱。
+   * distinct在窗口函数之后计算、union只能加到第一段、select *后面不能再跟列(oracle)，这些情况返回null
+   *
+   * @param sql    原始sql语句
+   * @param column 总行数的列名
+   * @return 无法改写时返回null
+   */
+  static String windowCount(String sql, String column) {
+    String key = column + '\n' + sql;
+    String window = WINDOW_CACHE.getIfPresent(key);
+    if (window == null) {
+      window = rewriteWindow(sql, column);
+      if (window == null) {
+        window = UNSUPPORTED;
+      }
+      WINDOW_CACHE.put(key, window);
+    }
+    return window == UNSUPPORTED ? null : window;
+  }
+
+  private static String rewriteWindow(String sql, String column) {
+    List<Token> tokens = tokenize(sql);
+    int n = tokens.size();
+    if (n < 2 || !tokens.get(0).is("select") || tokens.get(1).is("distinct") || tokens.get(1).is("distinctrow")) {
+      return null;
+    }
+    int from = -1;
+    for (int i = 1; i < n; i++) {
+      Token t = tokens.get(i);
+      if (t.depth != 0 || t.type != Token.WORD) {
+        continue;
+      }
+      if (from < 0 && "from".equals(t.text)) {
+        from = i;
+      } else if (from >= 0 && SET_OPERATORS.contains(t.text)) {
+        return null;
+      }
+    }
+    if (from < 0 || (from == 2 && tokens.get(1).is("*"))) {
+      return null;
+    }
+    int end = tokens.get(from - 1).end;
+    return sql.substring(0, end) + ", count(*) over() as " + column + sql.substring(end);
+  }
+
+  /**
+   * 在select后面加上sql_calc_found_rows，执行完以后用FOUND_ROWS()取总行数(mysql)
+   *
+   * @param sql 原始sql语句
+   * @return
+   */
+  static String foundRows(String sql) {
+    String found = FOUND_ROWS_CACHE.getIfPresent(sql);
+    if (found == null) {
+      int end = SqlInfo.of(sql).getFirstWordEnd();
+      found = sql.substring(0, end) + " sql_calc_found_rows" + sql.substring(end);
+      FOUND_ROWS_CACHE.put(sql, found);
+    }
+    return found;
+  }
+
+  /**
+   * count语句没有过滤条件时(select count(0) from t)返回表名，否则返回null
+   *
+   * @param countSql build生成的count语句
+   * @return
+   */
+  static String singleTable(String countSql) {
+    List<Token> tokens = tokenize(countSql);
+    if (tokens.size() != 7 || !tokens.get(1).is("count") || !tokens.get(5).is("from") || tokens.get(6).type != Token.WORD) {
+      return null;
+    }
+    Token table = tokens.get(6);
+    return countSql.substring(table.start, table.end).replace("`", "").replace("\"", "");
+  }
+
+  private static String wrap(String sql) {
+    return "select count(0) from (" + sql.trim() + ") tmp_count";
+  }
+
+  private static String trimRight(StringBuilder sbd) {
+    int len = sbd.length();
+    while (len > 0 && Character.isWhitespace(sbd.charAt(len - 1))) {
+      len--;
+    }
+    sbd.setLength(len);
+    return sbd.toString();
+  }
+
+  /**
+   * 找出可以去掉的left join，返回每个join的[起始token, 结束token)。
+   * 只有形如 left join t b on b.id = a.x 的join才能去掉：按主键关联最多匹配一行，不会改变左表的行数，
+   * 并且别名b没有在其他地方用到。条件里有不带别名的列时无法判断属于哪张表，不做处理
+   */
+  private static List<int[]> removableJoins(List<Token> tokens, int from, int fromEnd, int stop) {
+    List<int[]> items = Lists.newArrayList();
+    int start = -1;
+    for (int i = from + 1; i < fromEnd; i++) {
+      Token t = tokens.get(i);
+      if (t.depth != 0) {
+        continue;
+      }
+      Token prev = tokens.get(i - 1);
+      boolean joinStart = t.is(",") || (t.type == Token.WORD && JOIN_START.contains(t.text)
+        && !(prev.type == Token.WORD && (JOIN_START.contains(prev.text) || prev.is("outer"))));
+      if (joinStart) {
+        if (start >= 0) {
+          items.add(new int[]{start, i});
+        }
+        start = i;
+      }
+    }
+    if (start >= 0) {
+      items.add(new int[]{start, fromEnd});
+    }
+    List<int[]> removed = Lists.newArrayList();
+    if (items.isEmpty() || hasUnqualifiedColumn(tokens, from, fromEnd, stop, items)) {
+      return removed;
+    }
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int[] item : items) {
+        if (removed.contains(item)) {
+          continue;
+        }
+        String alias = removableAlias(tokens, item);
+        if (alias != null && !isReferenced(tokens, from, stop, item, removed, alias)) {
+          removed.add(item);
+          changed = true;
+        }
+      }
+    }
+    List<int[]> sorted = Lists.newArrayListWithCapacity(removed.size());
+    for (int[] item : items) {
+      if (removed.contains(item)) {
+        sorted.add(item);
+      }
+    }
+    return sorted;
+  }
+
+  /**
+   * left [outer] join table [as] alias on alias.id = x.y，返回alias，不满足时返回null
+   */
+  private static String removableAlias(List<Token> tokens, int[] item) {
+    int i = item[0];
+    if (!tokens.get(i).is("left")) {
+      return null;
+    }
+    i++;
+    if (i < item[1] && tokens.get(i).is("outer")) {
+      i++;
+    }
+    if (i >= item[1] || !tokens.get(i).is("join")) {
+      return null;
+    }
+    i++;
+    if (i >= item[1] || tokens.get(i).type != Token.WORD) {
+      return null;
+    }
+    String alias = tokens.get(i).text;
+    i++;
+    if (i < item[1] && tokens.get(i).is("as")) {
+      i++;
+    }
+    if (i < item[1] && tokens.get(i).type == Token.WORD && !tokens.get(i).is("on")) {
+      alias = tokens.get(i).text;
+      i++;
+    }
+    if (i + 4 != item[1] || !tokens.get(i).is("on") || !tokens.get(i + 2).is("=")) {
+      return null;
+    }
+    Token left = tokens.get(i + 1);
+    Token right = tokens.get(i + 3);
+    if (left.type != Token.WORD || right.type != Token.WORD) {
+      return null;
+    }
+    String key = alias + ".id";
+    if (key.equals(left.text) && !alias.equals(right.qualifier())) {
+      return alias;
+    }
+    if (key.equals(right.text) && !alias.equals(left.qualifier())) {
+      return alias;
+    }
+    return null;
+  }
+
+  private static boolean isReferenced(List<Token> tokens, int from, int stop, int[] item, List<int[]> removed, String alias) {
+    for (int i = from + 1; i < stop; i++) {
+      if (i >= item[0] && i < item[1]) {
+        continue;
+      }
+      boolean skip = false;
+      for (int[] r : removed) {
+        if (i >= r[0] && i < r[1]) {
+          skip = true;
+          break;
+        }
+      }
+      if (!skip && tokens.get(i).type == Token.WORD && alias.equals(tokens.get(i).qualifier())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * where子句和join条件里是否有不带表别名的列
+   */
+  private static boolean hasUnqualifiedColumn(List<Token> tokens, int from, int fromEnd, int stop, List<int[]> items) {
+    for (int[] item : items) {
+      boolean on = false;
+      for (int i = item[0]; i < item[1]; i++) {
+        Token t = tokens.get(i);
+        if (on && isUnqualifiedColumn(tokens, i)) {
+          return true;
+        }
+        on |= t.is("on") || t.is("using");
+      }
+    }
+    for (int i = fromEnd + 1; i < stop; i++) {
+      if (isUnqualifiedColumn(tokens, i)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isUnqualifiedColumn(List<Token> tokens, int i) {
+    Token t = tokens.get(i);
+    if (t.type != Token.WORD || t.qualifier() != null || KEYWORDS.contains(t.text) || Character.isDigit(t.text.charAt(0))) {
+      return false;
+    }
+    // 函数名
+    return i + 1 >= tokens.size() || !tokens.get(i + 1).is("(");
+  }
+
+  static List<Token> tokenize(String sql) {
+    List<Token> tokens = Lists.newArrayList();
+    int len = sql.length();
+    int depth = 0;
+    int i = 0;
+    while (i < len) {
+      char c = sql.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == '-' && i + 1 < len && sql.charAt(i + 1) == '-') {
+        while (i < len && sql.charAt(i) != '\n') {
+          i++;
+        }
+      } else if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+        int close = sql.indexOf("*/", i + 2);
+        i = close < 0 ? len : close + 2;
+      } else if (c == '\'') {
+        int start = i++;
+        while (i < len) {
+          char ch = sql.charAt(i++);
+          if (ch == '\\') {
+            i++;
+          } else if (ch == '\'') {
+            if (i < len && sql.charAt(i) == '\'') {
+              i++;
+            } else {
+              break;
+            }
+          }
+        }
+        tokens.add(new Token(Token.STRING, null, start, Math.min(i, len), depth));
+      } else if (isWordStart(c)) {
+        int start = i;
+        StringBuilder text = new StringBuilder();
+        while (i < len) {
+          char ch = sql.charAt(i);
+          if (ch == '`' || ch == '"') {
+            int close = sql.indexOf(ch, i + 1);
+            close = close < 0 ? len : close;
+            text.append(sql, i + 1, close);
+            i = Math.min(close + 1, len);
+          } else if (isWordPart(ch)) {
+            text.append(ch);
+            i++;
+          } else if (ch == '.' && i + 1 < len && (isWordStart(sql.charAt(i + 1)) || Character.isDigit(sql.charAt(i + 1)))) {
+            text.append('.');
+            i++;
+          } else {
+            break;
+          }
+        }
+        tokens.add(new Token(Token.WORD, text.toString().toLowerCase(), start, i, depth));
+      } else {
+        if (c == ')') {
+          depth--;
+        }
+        tokens.add(new Token(Token.PUNCT, String.valueOf(c), i, i + 1, depth));
+        if (c == '(') {
+          depth++;
+        }
+        i++;
+      }
+    }
+    return tokens;
+  }
+
+  private static boolean isWordStart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '`' || c == '"';
+  }
+
+  private static boolean isWordPart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+  }
+
+  static final class Token {
+    static final int WORD = 0;
+    static final int STRING = 1;
+    static final int PUNCT = 2;
+    final int type;
+    /**
+     * 小写、去掉引号后的内容，字符串常量为null
+     */
+    final String text;
+    final int start;
+    final int end;
+    /**
+     * 所在的括号层数
+     */
+    final int depth;
+
+    Token(int type, String text, int start, int end, int depth) {
+      this.type = type;
+      this.text = text;
+      this.start = start;
+      this.end = end;
+      this.depth = depth;
+    }
+
+    boolean is(String s) {
+      return type != STRING && s.equals(text);
+    }
+
+    /**
+     * a.b的a，没有限定名时返回null
+     */
+    String qualifier() {
+      int dot = text.lastIndexOf('.');
+      return dot < 0 ? null : text.substring(0, dot);
+    }
+  }
+}
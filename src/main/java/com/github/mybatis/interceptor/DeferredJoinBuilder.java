@@ -0,0 +1,115 @@
+package com.github.mybatis.interceptor;
+
+import com.github.mybatis.interceptor.CountSqlBuilder.Token;
+import com.github.mybatis.pagination.dialect.Dialect;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 深分页的延迟关联：先在子查询里按条件和排序只取出本页的主键(可以只扫描索引)，再关联回原表读取整行，
+ * 避免数据库为了跳过offset行而逐行回表。
+ * <pre>
+ * select cols from t where W order by O limit o, n
+ * =&gt; select cols from t join (select id as tmp_id from t where W order by O limit o, n) tmp_ids on t.id = tmp_ids.tmp_id order by O
+ * </pre>
+ * 只处理单表、有order by、没有distinct/group by/聚合/union，并且where之外没有参数的语句，其他语句返回null。
+ * 分页参数只出现在子查询里，仍然是语句的最后几个参数，所以可以直接使用Dialect生成子查询的分页语句
+ */
+final class DeferredJoinBuilder {
+  private static final Cache<String, String[]> CACHE = CacheBuilder.newBuilder().maximumSize(10000).build();
+  private static final String[] NONE = new String[0];
+  private static final String ID_COLUMN = "id";
+  private static final String ID_ALIAS = "tmp_id";
+  /**
+   * 出现在最外层时不能改写的关键字
+   */
+  private static final Set<String> STOP = ImmutableSet.of("group", "having", "limit", "offset", "fetch", "for", "lock", "window",
+    "union", "intersect", "except", "minus", "join", "left", "right", "inner", "cross", "natural", "straight_join");
+
+  private DeferredJoinBuilder() {
+  }
+
+  /**
+   * 生成延迟关联的分页语句，不能改写时返回null
+   *
+   * @param sql 原始sql语句
+   * @param dialect 用来生成子查询的分页语句
+   * @return
+   */
+  static String build(String sql, Dialect dialect) {
+    String[] parts = CACHE.getIfPresent(sql);
+    if (parts == null) {
+      parts = split(sql);
+      CACHE.put(sql, parts == null ? NONE : parts);
+    }
+    if (parts == null || parts.length == 0) {
+      return null;
+    }
+    return parts[0] + dialect.getPageSql(parts[1]) + parts[2];
+  }
+
+  /**
+   * 拆成[外层开头, 取主键的子查询, 外层结尾]三部分，不能改写时返回null
+   */
+  static String[] split(String sql) {
+    List<Token> tokens = CountSqlBuilder.tokenize(sql);
+    int n = tokens.size();
+    if (n < 4 || !tokens.get(0).is("select")) {
+      return null;
+    }
+    int from = -1;
+    int where = -1;
+    int order = -1;
+    for (int i = 1; i < n; i++) {
+      Token t = tokens.get(i);
+      if (t.is("?") && (where < 0 || order >= 0)) {
+        return null;
+      }
+      if (t.depth != 0 || t.type != Token.WORD) {
+        continue;
+      }
+      String w = t.text;
+      if (from < 0) {
+        if ("from".equals(w)) {
+          from = i;
+        } else if (i == 1 && ("distinct".equals(w) || "distinctrow".equals(w))) {
+          return null;
+        } else if (i + 1 < n && tokens.get(i + 1).is("(")) {
+          // select列表里的函数可能是聚合函数，保守处理
+          return null;
+        }
+      } else if (i == from + 2 && "where".equals(w)) {
+        where = i;
+      } else if (order < 0 && "order".equals(w) && i + 1 < n && tokens.get(i + 1).is("by")) {
+        order = i;
+      } else if (STOP.contains(w)) {
+        return null;
+      }
+    }
+    if (from < 0 || order < 0 || from + 1 >= n) {
+      return null;
+    }
+    Token table = tokens.get(from + 1);
+    if (table.type != Token.WORD || (where < 0 && order != from + 2)) {
+      return null;
+    }
+    String tableName = sql.substring(table.start, table.end);
+    Token first = tokens.get(1);
+    String columns = sql.substring(first.start, tokens.get(from).start).trim();
+    if (from == 2 && first.is("*")) {
+      columns = tableName + ".*";
+    }
+    // 子查询只返回tmp_id一列，外层不带表名的列和order by没有歧义
+    String body = sql.substring(table.end, tokens.get(order).start).trim();
+    String orderBy = sql.substring(tokens.get(order).start).trim();
+    String head = "select " + columns + " from " + tableName + " join (";
+    String inner = "select " + tableName + '.' + ID_COLUMN + " as " + ID_ALIAS + " from " + tableName
+      + (body.isEmpty() ? "" : " " + body) + " " + orderBy;
+    String tail = ") tmp_ids on " + tableName + '.' + ID_COLUMN + " = tmp_ids." + ID_ALIAS + " " + orderBy;
+    return new String[]{head, inner, tail};
+  }
+}
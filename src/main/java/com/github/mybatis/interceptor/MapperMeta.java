@@ -1,25 +1,56 @@
 package com.github.mybatis.interceptor;
 
+import com.github.mybatis.entity.TrackedEntity;
+import com.github.mybatis.pagination.Page;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.DeleteProvider;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.InsertProvider;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.SelectProvider;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.annotations.UpdateProvider;
 import org.apache.ibatis.mapping.ResultMap;
 
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
 import java.util.List;
+import java.util.Map;
 
 /**
- * 元信息
+ * 元信息，同时也是每条语句的执行计划：记录拦截器的各个阶段对这条语句是否有事可做，没事可做的阶段直接跳过
  *
  * Created by lirui on 2014/10/30.
  */
 class MapperMeta {
+  @SuppressWarnings("unchecked")
+  private static final Class<? extends Annotation>[] STATEMENT_ANNOTATIONS = new Class[]{Select.class, SelectProvider.class,
+    Insert.class, InsertProvider.class, Update.class, UpdateProvider.class, Delete.class, DeleteProvider.class};
   private Class<?> entity;
   private boolean fillEntity;
   private boolean fillResultMap;
   private List<ResultMap> resultMaps;
+  private boolean splitBatch;
+  private String[] projection;
+  private boolean streaming;
+  private boolean dirtyCheck;
+  private String table;
+  private boolean estimatedCount;
+  /**
+   * 参数中可能有Page对象，需要分页
+   */
+  private boolean pageable = true;
+  /**
+   * 结果中可能有TrackedEntity，需要记录快照
+   */
+  private boolean snapshot = true;
 
-  public MapperMeta(Class<?> entity, boolean fillEntity, boolean fillResultMap, List<ResultMap> resultMaps) {
+  public MapperMeta(Class<?> entity, boolean fillEntity, boolean fillResultMap, List<ResultMap> resultMaps, boolean splitBatch) {
     this.entity = entity;
     this.fillEntity = fillEntity;
     this.fillResultMap = fillResultMap;
     this.resultMaps = resultMaps;
+    this.splitBatch = splitBatch;
   }
 
   public Class<?> getEntity() {
@@ -53,4 +84,134 @@ class MapperMeta {
   public void setResultMaps(List<ResultMap> resultMaps) {
     this.resultMaps = resultMaps;
   }
+
+  public boolean isSplitBatch() {
+    return splitBatch;
+  }
+
+  public void setSplitBatch(boolean splitBatch) {
+    this.splitBatch = splitBatch;
+  }
+
+  public String[] getProjection() {
+    return projection;
+  }
+
+  public void setProjection(String[] projection) {
+    this.projection = projection;
+  }
+
+  public boolean isStreaming() {
+    return streaming;
+  }
+
+  public void setStreaming(boolean streaming) {
+    this.streaming = streaming;
+  }
+
+  public boolean isDirtyCheck() {
+    return dirtyCheck;
+  }
+
+  public void setDirtyCheck(boolean dirtyCheck) {
+    this.dirtyCheck = dirtyCheck;
+  }
+
+  public String getTable() {
+    return table;
+  }
+
+  public void setTable(String table) {
+    this.table = table;
+  }
+
+  public boolean isEstimatedCount() {
+    return estimatedCount;
+  }
+
+  public void setEstimatedCount(boolean estimatedCount) {
+    this.estimatedCount = estimatedCount;
+  }
+
+  public boolean isPageable() {
+    return pageable;
+  }
+
+  public void setPageable(boolean pageable) {
+    this.pageable = pageable;
+  }
+
+  public boolean isSnapshot() {
+    return snapshot;
+  }
+
+  public void setSnapshot(boolean snapshot) {
+    this.snapshot = snapshot;
+  }
+
+  /**
+   * Executor阶段是否需要处理，否则直接执行
+   */
+  boolean isExecutorActive() {
+    return fillEntity || fillResultMap || splitBatch || projection != null || streaming || dirtyCheck || estimatedCount || pageable;
+  }
+
+  /**
+   * 参数类型中是否可能传入Page：Page及其子类、Object，或者可能以Page为值的Map。
+   * Serializable、List这类接口虽然也是Page的父类型，但不会有人把Page当作主键或列表传进来
+   */
+  static boolean acceptsPage(Class<?>... types) {
+    for (Class<?> type : types) {
+      if (Page.class.isAssignableFrom(type) || type == Object.class || Map.class.isAssignableFrom(type)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * 结果中是否可能出现TrackedEntity，resultMap的类型是Object这样的父类型时也算
+   */
+  static boolean mayReturnTracked(List<ResultMap> resultMaps) {
+    for (ResultMap rm : resultMaps) {
+      Class<?> type = rm.getType();
+      if (type == null || TrackedEntity.class.isAssignableFrom(type) || type.isAssignableFrom(TrackedEntity.class)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * 找到statement对应的mapper方法：跳过桥接方法，同名方法中优先选带有sql注解的，再选子接口中声明的
+   *
+   * @param mapperClass mapper接口
+   * @param name        方法名，即statement id的最后一段
+   * @return 找不到时返回null
+   */
+  static Method findMethod(Class<?> mapperClass, String name) {
+    Method found = null;
+    boolean annotated = false;
+    for (Method m : mapperClass.getMethods()) {
+      if (!name.equals(m.getName()) || m.isBridge() || m.isSynthetic()) {
+        continue;
+      }
+      boolean a = hasStatementAnnotation(m);
+      if (found == null || (a && !annotated)
+        || (a == annotated && found.getDeclaringClass() != m.getDeclaringClass() && found.getDeclaringClass().isAssignableFrom(m.getDeclaringClass()))) {
+        found = m;
+        annotated = a;
+      }
+    }
+    return found;
+  }
+
+  private static boolean hasStatementAnnotation(Method method) {
+    for (Class<? extends Annotation> type : STATEMENT_ANNOTATIONS) {
+      if (method.isAnnotationPresent(type)) {
+        return true;
+      }
+    }
+    return false;
+  }
 }
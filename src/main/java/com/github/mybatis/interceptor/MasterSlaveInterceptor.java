@@ -1,48 +1,263 @@
 package com.github.mybatis.interceptor;
 
-import com.github.mybatis.util.ReflectionUtil;
-import org.apache.ibatis.executor.statement.RoutingStatementHandler;
+import com.github.mybatis.annotation.ReadFromMaster;
+import com.github.mybatis.annotation.ReadFromReplica;
+import com.github.mybatis.annotation.Route;
+import com.github.mybatis.spring.DynamicDataSource;
+import com.github.mybatis.spring.LazyConnection;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.apache.ibatis.builder.StaticSqlSource;
 import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.logging.jdbc.ConnectionLogger;
+import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.SqlSource;
 import org.apache.ibatis.plugin.*;
+import org.apache.ibatis.scripting.defaults.RawSqlSource;
+import org.apache.ibatis.session.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Properties;
 
 /**
- * 读写分离插件
+ * 读写分离插件，把当前语句是否只读直接设置到要使用的LazyConnection上，不依赖执行线程。
+ * 每条语句的路由在注册mapper时按@ReadFromMaster/@ReadFromReplica/@Route注解和静态sql一次性算好，
+ * 只有动态sql才在执行时按sql判断
  *
  * Created by lirui on 15/1/7.
  */
 @Intercepts({@Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class})})
 public class MasterSlaveInterceptor implements Interceptor {
-  private static final ThreadLocal<Boolean> READ_ONLY_LOCAL = new ThreadLocal<Boolean>();
+  private static final Logger LOG = LoggerFactory.getLogger(MasterSlaveInterceptor.class);
+  private static final ThreadLocal<StatementRoute> ROUTE_LOCAL = new ThreadLocal<StatementRoute>();
+  /**
+   * statement id到路由的只读表，之后新增的语句复制一份再替换，查询时不加锁
+   */
+  private static volatile Map<String, StatementRoute> routes = ImmutableMap.of();
 
+  /**
+   * 连接不是LazyConnection(例如被其他代理包装)时，在prepare期间通过当前线程传递
+   *
+   * @return
+   */
   public static boolean isReadOnly() {
-    return Boolean.TRUE.equals(READ_ONLY_LOCAL.get());
+    StatementRoute route = ROUTE_LOCAL.get();
+    return route != null && route.readOnly;
+  }
+
+  /**
+   * 和isReadOnly()一样在prepare期间通过当前线程传递，语句指定了命名读库(或者@ReadFromMaster)时返回它的名字
+   *
+   * @return
+   */
+  public static String getRoutePool() {
+    StatementRoute route = ROUTE_LOCAL.get();
+    return route == null ? null : route.pool;
   }
 
   @Override
   public Object intercept(Invocation invocation) throws Throwable {
     StatementHandler statementHandler = (StatementHandler) invocation.getTarget();
-    MappedStatement mappedStatement;
-    if (statementHandler instanceof RoutingStatementHandler) {
-      StatementHandler delegate = ReflectionUtil.getFieldValue(statementHandler, "delegate");
-      mappedStatement = ReflectionUtil.getFieldValue(delegate, "mappedStatement");
+    MappedStatement mappedStatement = MyBatisFields.mappedStatement(statementHandler);
+    return route(invocation, resolve(mappedStatement, statementHandler.getBoundSql()));
+  }
+
+  /**
+   * 注册mapper后为Configuration中所有的语句生成路由，由MapperFactoryBean调用
+   *
+   * @param conf
+   */
+  public static void prepareRoutes(Configuration conf) {
+    buildRoutes(conf, conf.getMappedStatementNames());
+  }
+
+  /**
+   * 查表得到语句的路由，表里没有的语句(启动之后才添加的)先补上，动态sql按执行时的sql判断
+   */
+  static StatementRoute resolve(MappedStatement ms, BoundSql boundSql) {
+    if (ms == null) {
+      return StatementRoute.WRITE;
+    }
+    StatementRoute route = routes.get(ms.getId());
+    if (route == null) {
+      route = buildRoutes(ms.getConfiguration(), Collections.singleton(ms.getId())).get(ms.getId());
+    }
+    if (route == null || route == StatementRoute.DYNAMIC) {
+      return isReadOnly(ms, boundSql) ? StatementRoute.REPLICA : StatementRoute.WRITE;
+    }
+    return route;
+  }
+
+  /**
+   * 查询语句走读库，用到last_insert_id()/row_count()的查询必须和写操作在同一个连接上
+   */
+  static boolean isReadOnly(MappedStatement mappedStatement, BoundSql boundSql) {
+    if (mappedStatement == null || mappedStatement.getSqlCommandType() != SqlCommandType.SELECT) {
+      return false;
+    }
+    return isReadOnlySql(boundSql.getSql());
+  }
+
+  private static boolean isReadOnlySql(String sql) {
+    SqlInfo info = SqlInfo.of(sql);
+    return !(info.usesLastInsertId() || info.usesRowCount());
+  }
+
+  private static Map<String, StatementRoute> buildRoutes(Configuration conf, Collection<String> statementIds) {
+    synchronized (MasterSlaveInterceptor.class) {
+      Map<String, StatementRoute> table = routes;
+      Map<String, StatementRoute> added = Maps.newHashMap();
+      for (String id : statementIds) {
+        // 不带namespace的短名字
+        if (id.indexOf('.') < 0 || table.containsKey(id) || added.containsKey(id) || !conf.hasStatement(id, false)) {
+          continue;
+        }
+        try {
+          added.put(id, buildRoute(conf.getMappedStatement(id, false)));
+        } catch (RuntimeException e) {
+          LOG.warn("cannot resolve route of {}", id, e);
+          added.put(id, StatementRoute.DYNAMIC);
+        }
+      }
+      if (!added.isEmpty()) {
+        table = ImmutableMap.<String, StatementRoute>builder().putAll(table).putAll(added).build();
+        routes = table;
+      }
+      return table;
+    }
+  }
+
+  private static StatementRoute buildRoute(MappedStatement ms) {
+    StatementRoute annotated = annotatedRoute(ms.getId());
+    if (ms.getSqlCommandType() != SqlCommandType.SELECT) {
+      if (annotated != null) {
+        LOG.warn("{} is not a query, routing annotation ignored", ms.getId());
+      }
+      return StatementRoute.WRITE;
+    }
+    if (annotated != null) {
+      return annotated;
+    }
+    // 静态sql启动时就能判断，动态sql要等到执行时
+    SqlSource source = ms.getSqlSource();
+    if (source instanceof RawSqlSource || source instanceof StaticSqlSource) {
+      return isReadOnlySql(source.getBoundSql(null).getSql()) ? StatementRoute.REPLICA : StatementRoute.WRITE;
+    }
+    return StatementRoute.DYNAMIC;
+  }
+
+  /**
+   * 先看mapper方法上的注解，再看mapper接口和声明方法的父接口
+   */
+  private static StatementRoute annotatedRoute(String statementId) {
+    int pos = statementId.lastIndexOf('.');
+    Class<?> mapperClass;
+    try {
+      mapperClass = Class.forName(statementId.substring(0, pos));
+    } catch (ClassNotFoundException e) {
+      // xml中的namespace不一定是类名
+      return null;
+    }
+    Method method = MapperMeta.findMethod(mapperClass, statementId.substring(pos + 1));
+    StatementRoute route = method == null ? null : annotatedRoute(method);
+    if (route == null) {
+      route = annotatedRoute(mapperClass);
+    }
+    if (route == null && method != null) {
+      route = annotatedRoute(method.getDeclaringClass());
+    }
+    return route;
+  }
+
+  private static StatementRoute annotatedRoute(AnnotatedElement element) {
+    if (element.isAnnotationPresent(ReadFromMaster.class)) {
+      return StatementRoute.MASTER;
+    }
+    if (element.isAnnotationPresent(ReadFromReplica.class)) {
+      return StatementRoute.REPLICA;
+    }
+    Route route = element.getAnnotation(Route.class);
+    return route == null ? null : StatementRoute.pool(route.value());
+  }
+
+  /**
+   * 设置使用哪个数据源后执行prepare，PaginationAutoMapInterceptor开启routing时也通过这里完成读写分离
+   */
+  static Object route(Invocation invocation, StatementRoute route) throws Throwable {
+    LazyConnection lazy = enter((Connection) invocation.getArgs()[0], route);
+    try {
+      return invocation.proceed();
+    } finally {
+      exit(lazy);
+    }
+  }
+
+  /**
+   * 在conn上执行语句前设置使用哪个数据源，执行完以后把返回值传给exit
+   */
+  static LazyConnection enter(Connection conn, StatementRoute route) {
+    LazyConnection lazy = unwrap(conn);
+    if (lazy != null) {
+      lazy.setRouteReadOnly(route.readOnly);
+      lazy.setRoutePool(route.pool);
     } else {
-      mappedStatement = ReflectionUtil.getFieldValue(statementHandler, "mappedStatement");
+      ROUTE_LOCAL.set(route);
     }
-    // 读写分离设置使用哪个数据源
-    Boolean readOnly = Boolean.FALSE;
-    if (mappedStatement.getSqlCommandType() == SqlCommandType.SELECT) {
-      final String sql = statementHandler.getBoundSql().getSql();
-      String s = sql.toLowerCase();
-      readOnly = !(s.contains("last_insert_id()") || s.contains("row_count()"));
+    return lazy;
+  }
+
+  static void exit(LazyConnection lazy) {
+    if (lazy != null) {
+      lazy.setRouteReadOnly(null);
+      lazy.setRoutePool(null);
+    } else {
+      ROUTE_LOCAL.remove();
     }
-    READ_ONLY_LOCAL.set(readOnly);
+  }
 
-    return invocation.proceed();
+  /**
+   * 在其他线程上执行和这条语句配套的只读查询(例如并行count)时使用的读库，
+   * conn已经连到主库或者语句本身要走主库时返回MASTER_POOL，和语句读到同样的数据
+   */
+  static String readerPool(Connection conn, MappedStatement ms, BoundSql boundSql) {
+    LazyConnection lazy = unwrap(conn);
+    if (lazy != null && lazy.isOnMaster()) {
+      return DynamicDataSource.MASTER_POOL;
+    }
+    StatementRoute route = resolve(ms, boundSql);
+    if (route.pool != null) {
+      return route.pool;
+    }
+    return route.readOnly ? null : DynamicDataSource.MASTER_POOL;
+  }
+
+  /**
+   * 找到DynamicDataSource返回的LazyConnection，打开mybatis的sql日志时连接外面还有一层ConnectionLogger
+   */
+  private static LazyConnection unwrap(Connection conn) {
+    Connection c = conn;
+    while (c != null && Proxy.isProxyClass(c.getClass())) {
+      InvocationHandler h = Proxy.getInvocationHandler(c);
+      if (h instanceof LazyConnection) {
+        return (LazyConnection) h;
+      }
+      if (!(h instanceof ConnectionLogger)) {
+        return null;
+      }
+      c = ((ConnectionLogger) h).getConnection();
+    }
+    return null;
   }
 
   @Override
@@ -0,0 +1,149 @@
+package com.github.mybatis.interceptor;
+
+import com.github.mybatis.util.ReflectionUtil;
+import org.apache.ibatis.executor.keygen.KeyGenerator;
+import org.apache.ibatis.executor.resultset.DefaultResultSetHandler;
+import org.apache.ibatis.executor.resultset.ResultSetHandler;
+import org.apache.ibatis.executor.statement.BaseStatementHandler;
+import org.apache.ibatis.executor.statement.RoutingStatementHandler;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.session.RowBounds;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+/**
+ * 拦截器需要读写的mybatis内部字段，类加载时一次性取得Field，之后直接读写，
+ * 代替每次按属性路径解析的MetaObject和按类名拼接key查找的ReflectionUtil
+ */
+final class MyBatisFields {
+  private static final Field PLUGIN_TARGET = field(Plugin.class, "target");
+  private static final Field ROUTING_DELEGATE = field(RoutingStatementHandler.class, "delegate");
+  private static final Field HANDLER_MAPPED_STATEMENT = field(BaseStatementHandler.class, "mappedStatement");
+  private static final Field HANDLER_ROW_BOUNDS = field(BaseStatementHandler.class, "rowBounds");
+  private static final Field RESULT_SET_BOUND_SQL = field(DefaultResultSetHandler.class, "boundSql");
+  private static final Field RESULT_SET_MAPPED_STATEMENT = field(DefaultResultSetHandler.class, "mappedStatement");
+  private static final Field ROW_BOUNDS_OFFSET = field(RowBounds.class, "offset");
+  private static final Field ROW_BOUNDS_LIMIT = field(RowBounds.class, "limit");
+  private static final Field BOUND_SQL_SQL = field(BoundSql.class, "sql");
+  private static final Field BOUND_SQL_PARAMETER_MAPPINGS = field(BoundSql.class, "parameterMappings");
+  private static final Field MS_RESULT_MAPS = field(MappedStatement.class, "resultMaps");
+  private static final Field MS_FETCH_SIZE = field(MappedStatement.class, "fetchSize");
+  private static final Field MS_KEY_GENERATOR = field(MappedStatement.class, "keyGenerator");
+
+  private MyBatisFields() {
+  }
+
+  private static Field field(Class<?> clazz, String name) {
+    Field field = ReflectionUtil.getDeclaredField(clazz, name);
+    if (field == null) {
+      throw new IllegalStateException("unsupported mybatis version, cannot find " + clazz.getName() + '.' + name);
+    }
+    field.setAccessible(true);
+    return field;
+  }
+
+  private static Object get(Field field, Object target) {
+    try {
+      return field.get(target);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void set(Field field, Object target, Object value) {
+    try {
+      field.set(target, value);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * 去掉插件的代理，返回原始对象
+   */
+  static Object unwrap(Object target) {
+    Object obj = target;
+    while (obj != null && Proxy.isProxyClass(obj.getClass())) {
+      InvocationHandler h = Proxy.getInvocationHandler(obj);
+      if (!(h instanceof Plugin)) {
+        break;
+      }
+      obj = get(PLUGIN_TARGET, h);
+    }
+    return obj;
+  }
+
+  /**
+   * RoutingStatementHandler里真正执行的StatementHandler
+   */
+  static StatementHandler delegate(StatementHandler handler) {
+    Object obj = unwrap(handler);
+    if (obj instanceof RoutingStatementHandler) {
+      obj = get(ROUTING_DELEGATE, obj);
+    }
+    return (StatementHandler) obj;
+  }
+
+  /**
+   * 不是BaseStatementHandler时返回null
+   */
+  static MappedStatement mappedStatement(StatementHandler handler) {
+    StatementHandler obj = delegate(handler);
+    return obj instanceof BaseStatementHandler ? (MappedStatement) get(HANDLER_MAPPED_STATEMENT, obj) : null;
+  }
+
+  /**
+   * 不是DefaultResultSetHandler时返回null
+   */
+  static MappedStatement mappedStatement(ResultSetHandler handler) {
+    Object obj = unwrap(handler);
+    return obj instanceof DefaultResultSetHandler ? (MappedStatement) get(RESULT_SET_MAPPED_STATEMENT, obj) : null;
+  }
+
+  /**
+   * 物理分页后不再需要mybatis的内存分页，ResultSetHandler使用的是同一个RowBounds对象
+   */
+  static void resetRowBounds(StatementHandler handler) {
+    RowBounds rowBounds = (RowBounds) get(HANDLER_ROW_BOUNDS, delegate(handler));
+    if (rowBounds != null && rowBounds != RowBounds.DEFAULT) {
+      set(ROW_BOUNDS_OFFSET, rowBounds, RowBounds.NO_ROW_OFFSET);
+      set(ROW_BOUNDS_LIMIT, rowBounds, RowBounds.NO_ROW_LIMIT);
+    }
+  }
+
+  /**
+   * ResultSetHandler和StatementHandler共用的BoundSql，不是DefaultResultSetHandler时返回null
+   */
+  static BoundSql boundSql(Object resultSetHandler) {
+    Object obj = unwrap(resultSetHandler);
+    return obj instanceof DefaultResultSetHandler ? (BoundSql) get(RESULT_SET_BOUND_SQL, obj) : null;
+  }
+
+  static void setSql(BoundSql boundSql, String sql) {
+    set(BOUND_SQL_SQL, boundSql, sql);
+  }
+
+  static void setParameterMappings(BoundSql boundSql, List<ParameterMapping> mappings) {
+    set(BOUND_SQL_PARAMETER_MAPPINGS, boundSql, mappings);
+  }
+
+  static void setResultMaps(MappedStatement ms, List<ResultMap> resultMaps) {
+    set(MS_RESULT_MAPS, ms, resultMaps);
+  }
+
+  static void setFetchSize(MappedStatement ms, Integer fetchSize) {
+    set(MS_FETCH_SIZE, ms, fetchSize);
+  }
+
+  static void setKeyGenerator(MappedStatement ms, KeyGenerator keyGenerator) {
+    set(MS_KEY_GENERATOR, ms, keyGenerator);
+  }
+}
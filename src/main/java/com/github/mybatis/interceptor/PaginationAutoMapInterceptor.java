@@ -1,34 +1,57 @@
 package com.github.mybatis.interceptor;
 
 import com.github.mybatis.annotation.AutoResultMap;
+import com.github.mybatis.annotation.EstimatedCount;
 import com.github.mybatis.annotation.FillEntityType;
+import com.github.mybatis.annotation.Projection;
+import com.github.mybatis.annotation.SplitBatch;
+import com.github.mybatis.entity.TrackedEntity;
+import com.github.mybatis.pagination.CountMode;
 import com.github.mybatis.pagination.Page;
+import com.github.mybatis.pagination.dialect.Dialect;
+import com.github.mybatis.pagination.dialect.Dialects;
+import com.github.mybatis.pagination.dialect.MySqlDialect;
 import com.github.mybatis.provider.CrudProvider;
+import com.github.mybatis.spring.DynamicDataSource;
+import com.github.mybatis.spring.LazyConnection;
 import com.github.mybatis.util.CloseableUtil;
 import com.github.mybatis.util.EntityUtil;
+import com.github.mybatis.util.PersistMeta;
+import com.github.mybatis.util.ReflectionUtil;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.ibatis.annotations.InsertProvider;
+import org.apache.ibatis.annotations.UpdateProvider;
 import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
 import org.apache.ibatis.executor.resultset.ResultSetHandler;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.mapping.*;
 import org.apache.ibatis.plugin.*;
 import org.apache.ibatis.reflection.MetaClass;
-import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.scripting.defaults.DefaultParameterHandler;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.defaults.DefaultSqlSession;
+import org.apache.ibatis.session.defaults.DefaultSqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
 
 import javax.persistence.Id;
+import javax.sql.DataSource;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * 自动生成泛型resultMap，并将泛型类设置到参数中
@@ -37,14 +60,86 @@ import java.util.*;
   args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
   @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
   @Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class}),
+  @Signature(type = StatementHandler.class, method = "query", args = {Statement.class, ResultHandler.class}),
   @Signature(type = ResultSetHandler.class, method = "handleResultSets", args = {Statement.class})})
 public class PaginationAutoMapInterceptor extends BaseInterceptor implements Interceptor {
   private static final String GENERATE_RESULT_MAP_NAME = "GeneratedResultMap";
   private static final Map<String, Class<?>> ENTITY_CACHE = Maps.newConcurrentMap();
-  private static final Map<String, MapperMeta> CACHED = Maps.newConcurrentMap();
-  private static final ThreadLocal<Page> PAGE_THREAD_LOCAL = new ThreadLocal<>();
+  /**
+   * statement id到MapperMeta的只读表，启动时由prepareMapperMeta一次性生成，之后新增的语句复制一份再替换，查询时不加锁
+   */
+  private static volatile Map<String, MapperMeta> mapperMetas = ImmutableMap.of();
   private static final String DEFAULT_DIALECT = "mysql";
+  private static final int DEFAULT_BATCH_SIZE = 1000;
+  private static final long DEFAULT_MAX_ALLOWED_PACKET = 4 * 1024 * 1024;
+  private static final int DEFAULT_MAX_IN_SIZE = 1000;
+  private static final int DEFAULT_STREAMING_FETCH_SIZE = 1000;
+  private static final int DEFAULT_COUNT_CACHE_SIZE = 10000;
+  private static final long DEFAULT_COUNT_TIMEOUT_MILLIS = 3000;
+  /**
+   * 单独执行count语句
+   */
+  public static final String COUNT_STRATEGY_COUNT = "count";
+  /**
+   * mysql：分页语句加上SQL_CALC_FOUND_ROWS，然后在同一个连接上执行SELECT FOUND_ROWS()
+   */
+  public static final String COUNT_STRATEGY_FOUND_ROWS = "foundRows";
+  /**
+   * 支持窗口函数的数据库：分页语句多查一列COUNT(*) OVER()，不用再执行count语句
+   */
+  public static final String COUNT_STRATEGY_WINDOW = "window";
+  private static final String FOUND_ROWS_SQL = "select found_rows()";
+  private static final String PAGE_PARAMETER = "_page_parameter_";
   private String dialect;
+  private Dialect pageDialect;
+  /**
+   * 批量写入时每条语句最多包含的行数
+   */
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  /**
+   * 对应mysql的max_allowed_packet，批量写入时单条语句的估算大小不超过这个值
+   */
+  private long maxAllowedPacket = DEFAULT_MAX_ALLOWED_PACKET;
+  /**
+   * 按主键列表查询或删除时，IN列表的最大长度
+   */
+  private int maxInSize = DEFAULT_MAX_IN_SIZE;
+  /**
+   * 并行查询各批主键的线程数，0表示在当前连接上依次执行
+   */
+  private int chunkThreads;
+  private ExecutorService chunkExecutor;
+  /**
+   * 使用ResultHandler逐行处理结果时的fetchSize，mysql固定为Integer.MIN_VALUE(驱动只有这样才会逐行读取)
+   */
+  private int streamingFetchSize = DEFAULT_STREAMING_FETCH_SIZE;
+  /**
+   * 分页总行数的缓存时间，0表示不缓存
+   */
+  private int countCacheSeconds;
+  private int countCacheSize = DEFAULT_COUNT_CACHE_SIZE;
+  private volatile CountCache countCache;
+  /**
+   * 总行数的获取方式，数据库不支持时使用count
+   */
+  private String countStrategy = COUNT_STRATEGY_COUNT;
+  /**
+   * 在独立的读库连接上和分页语句并行执行count的线程数，0表示在当前连接上先count再查询
+   */
+  private int countThreads;
+  private ExecutorService countExecutor;
+  /**
+   * 并行count的超时时间，超时后返回的Page总行数未知
+   */
+  private long countTimeoutMillis = DEFAULT_COUNT_TIMEOUT_MILLIS;
+  /**
+   * offset不小于这个值时，@AutoResultMap的实体分页查询改写成先按索引取主键再关联回表(延迟关联)，0表示关闭
+   */
+  private int deferredJoinOffset;
+  /**
+   * 在prepare时同时完成读写分离，开启后不再需要单独配置MasterSlaveInterceptor，每条语句少经过一层插件
+   */
+  private boolean routing;
 
   @SuppressWarnings({"rawtypes", "unchecked"})
   @Override
@@ -52,25 +147,183 @@ public class PaginationAutoMapInterceptor extends BaseInterceptor implements Int
     final String name = invocation.getMethod().getName();
     final Object target = invocation.getTarget();
     if (target instanceof StatementHandler) {
-      pagination(invocation, (StatementHandler) target);
+      StatementHandler handler = (StatementHandler) target;
+      if ("query".equals(name)) {
+        return query(invocation, handler);
+      }
+      MappedStatement ms = MyBatisFields.mappedStatement(handler);
+      // 读写分离要按改写前的sql判断
+      StatementRoute route = routing ? MasterSlaveInterceptor.resolve(ms, handler.getBoundSql()) : null;
+      // 参数不可能是Page的语句跳过分页
+      StatementContext context = ms != null && getMapperMeta(ms).isPageable() ? pagination(invocation, handler, ms) : null;
+      Object stmt;
+      try {
+        stmt = route != null ? MasterSlaveInterceptor.route(invocation, route) : invocation.proceed();
+      } catch (Throwable e) {
+        if (context != null) {
+          context.cancel();
+        }
+        throw e;
+      }
+      if (context != null && context.pending != null) {
+        context.pending.statement = (Statement) stmt;
+      }
+      return stmt;
     } else if (target instanceof Executor) {
-      autoMap(invocation, name);
+      MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
+      MapperMeta meta = getMapperMeta(ms);
+      if (meta.isExecutorActive()) {
+        autoMap(invocation, name, meta);
+      }
+      if (meta.isEstimatedCount() && "query".equals(name) && pageDialect != null && meta.getTable() != null) {
+        // 还没有经过prepare，按语句自己的路由读统计信息，不能当成写操作连到主库
+        Connection conn = ((Executor) target).getTransaction().getConnection();
+        LazyConnection lazy = MasterSlaveInterceptor.enter(conn, MasterSlaveInterceptor.resolve(ms, ms.getBoundSql(invocation.getArgs()[1])));
+        long rows;
+        try {
+          rows = tableRows(pageDialect, meta.getTable(), conn);
+        } finally {
+          MasterSlaveInterceptor.exit(lazy);
+        }
+        if (rows >= 0) {
+          return Lists.newArrayList(rows);
+        }
+      }
+      CountCache cache = countCache;
+      if (cache == null || !"update".equals(name) || meta.getTable() == null) {
+        return execute(invocation, meta);
+      }
+      try {
+        return execute(invocation, meta);
+      } finally {
+        // 写入后缓存的总行数作废
+        cache.invalidate(meta.getTable());
+      }
     } else if (target instanceof ResultSetHandler) {
-      Object result = invocation.proceed();
+      StatementContext context = StatementContext.detach(MyBatisFields.boundSql(target));
+      PendingCount pending = context == null ? null : context.pending;
+      Object[] args = invocation.getArgs();
+      if (pending != null && COUNT_STRATEGY_WINDOW.equals(pending.strategy)) {
+        args[0] = pending.wrap((Statement) args[0]);
+      }
+      Object result;
+      try {
+        result = invocation.proceed();
+      } catch (Throwable e) {
+        if (context != null) {
+          context.cancel();
+        }
+        throw e;
+      }
       if (result instanceof List) {
-        Page page = PAGE_THREAD_LOCAL.get();
-        if (page != null) {
+        MappedStatement ms = MyBatisFields.mappedStatement((ResultSetHandler) target);
+        if (ms == null || getMapperMeta(ms).isSnapshot()) {
+          snapshot((List) result);
+        }
+        if (context != null) {
+          Page page = context.page;
+          if (pending != null) {
+            context.pending = null;
+            fillPendingCount(pending, page);
+          }
           page.addAll((List) result);
-          PAGE_THREAD_LOCAL.remove();
+          if (page.isKeyset()) {
+            fillNextCursor(page);
+          }
           return page;
         }
       }
+      if (context != null) {
+        context.cancel();
+      }
       return result;
     }
 
     return invocation.proceed();
   }
 
+  /**
+   * 语句执行出错时不会走到handleResultSets，在这里取消并行的count
+   */
+  private Object query(Invocation invocation, StatementHandler handler) throws Throwable {
+    try {
+      return invocation.proceed();
+    } catch (Throwable e) {
+      StatementContext context = StatementContext.detach(handler.getBoundSql());
+      if (context != null) {
+        context.cancel();
+      }
+      throw e;
+    }
+  }
+
+  private Object execute(Invocation invocation, MapperMeta meta) throws Throwable {
+    if (meta.isSplitBatch()) {
+      return splitBatch(invocation);
+    }
+    if (meta.isDirtyCheck()) {
+      return updateDirty(invocation);
+    }
+    return invocation.proceed();
+  }
+
+  /**
+   * 查询出来的TrackedEntity记录快照
+   */
+  private void snapshot(List<?> rows) {
+    for (Object row : rows) {
+      if (row instanceof TrackedEntity) {
+        EntityUtil.snapshot((TrackedEntity) row);
+      } else if (row != null) {
+        // 结果集中的对象类型相同
+        return;
+      }
+    }
+  }
+
+  /**
+   * 从数据库加载的TrackedEntity没有修改时跳过update语句，更新成功后刷新快照
+   */
+  private Object updateDirty(Invocation invocation) throws Throwable {
+    Object parameter = invocation.getArgs()[1];
+    if (!(parameter instanceof TrackedEntity) || ((TrackedEntity) parameter).isNew()) {
+      return invocation.proceed();
+    }
+    TrackedEntity entity = (TrackedEntity) parameter;
+    if (!EntityUtil.isDirty(entity)) {
+      return 0;
+    }
+    Object result = invocation.proceed();
+    if (entity.isTracked()) {
+      EntityUtil.snapshot(entity);
+    }
+    return result;
+  }
+
+  /**
+   * keyset分页时取本页最后一行的排序键取值作为下一页的游标，本页不满时没有下一页
+   */
+  private void fillNextCursor(Page<?> page) {
+    if (page.isEmpty() || page.size() < page.getPageSize()) {
+      page.setNextCursor(null);
+      return;
+    }
+    String[] sortKeys = page.getSortKeys();
+    Object last = page.get(page.size() - 1);
+    Object[] cursor = new Object[sortKeys.length];
+    for (int i = 0; i < sortKeys.length; i++) {
+      String property = Page.sortProperty(sortKeys[i]);
+      if (last instanceof Map) {
+        cursor[i] = ((Map) last).get(property);
+      } else {
+        PersistMeta meta = EntityUtil.getMeta(last.getClass());
+        int pos = meta.indexOf(property);
+        cursor[i] = pos < 0 ? null : ReflectionUtil.getValue(meta.getFields()[pos], last);
+      }
+    }
+    page.setNextCursor(cursor);
+  }
+
   /**
    * 从传递的参数中找Page对象，并返回
    *
@@ -90,19 +343,14 @@ public class PaginationAutoMapInterceptor extends BaseInterceptor implements Int
         }
       }
     }
-    if (page != null) {
-      PAGE_THREAD_LOCAL.set(page);
-    }
     return page;
   }
 
   @SuppressWarnings({"rawtypes", "unchecked"})
-  private void autoMap(Invocation invocation, String name) throws ClassNotFoundException {
+  private void autoMap(Invocation invocation, String name, MapperMeta meta) {
     final Object[] queryArgs = invocation.getArgs();
     final MappedStatement ms = (MappedStatement) queryArgs[0];
     final Object parameter = queryArgs[1];
-    String statementId = ms.getId();
-    MapperMeta meta = getMapperMeta(ms.getConfiguration(), statementId);
     if (meta.isFillEntity()) {
       // 将泛型类加入到参数中供CrudTemplate使用
       if (parameter != null) {
@@ -121,12 +369,34 @@ public class PaginationAutoMapInterceptor extends BaseInterceptor implements Int
       }
     }
 
-    if (meta.isFillResultMap()) {
-      MetaObject metaMappedStatement = getMetaObject(ms);
-      metaMappedStatement.setValue("resultMaps", meta.getResultMaps());
+    if (meta.getProjection() != null && queryArgs[1] instanceof Map) {
+      Map map = (Map) queryArgs[1];
+      if (!map.containsKey(CrudProvider.PROJECTION_KEY)) {
+        map.put(CrudProvider.PROJECTION_KEY, meta.getProjection());
+      }
+    }
+
+    // 有些语句(比如upsert)需要根据方言生成
+    if ((meta.isFillEntity() || meta.isSplitBatch()) && queryArgs[1] instanceof Map) {
+      ((Map) queryArgs[1]).put(CrudProvider.DIALECT_KEY, dialect);
+    }
+
+    if (meta.isFillResultMap() && ms.getResultMaps() != meta.getResultMaps()) {
+      // prepareMapperMeta之后添加的语句
+      MyBatisFields.setResultMaps(ms, meta.getResultMaps());
+    }
+
+    // 通过ResultHandler逐行处理的查询，设置fetchSize避免驱动把整个结果集读入内存
+    if (meta.isStreaming() && ms.getFetchSize() == null) {
+      MyBatisFields.setFetchSize(ms, pageDialect instanceof MySqlDialect ? Integer.MIN_VALUE : streamingFetchSize);
     }
 
-    if (name.equals("query")) {
+    // 多行INSERT需要把生成的主键逐个回填
+    if (meta.isSplitBatch() && ms.getKeyGenerator() instanceof Jdbc3KeyGenerator && !(ms.getKeyGenerator() instanceof BatchKeyGenerator)) {
+      MyBatisFields.setKeyGenerator(ms, BatchKeyGenerator.INSTANCE);
+    }
+
+    if (meta.isPageable() && name.equals("query")) {
       final RowBounds rowBounds = (RowBounds) queryArgs[2];
       if (rowBounds == null || rowBounds == RowBounds.DEFAULT) {
         Page p = findPageParameter(queryArgs[1]);
@@ -137,67 +407,445 @@ public class PaginationAutoMapInterceptor extends BaseInterceptor implements Int
     }
   }
 
-  private void pagination(Invocation invocation, StatementHandler target) throws SQLException {
-    final MetaObject metaStatementHandler = getMetaObject(target);
-    final BoundSql boundSql = target.getBoundSql();
-    Page page = PAGE_THREAD_LOCAL.get();
-    if (page == null) {
-      page = findPageParameter(boundSql.getParameterObject());
+  /**
+   * 把集合参数拆分成多批执行：新增和更新按行数和数据包大小拆分，返回影响的总行数；
+   * 查询和删除按主键列表拆分，查询结果按传入的主键顺序返回
+   *
+   * @param invocation
+   * @return
+   * @throws Throwable
+   */
+  @SuppressWarnings("unchecked")
+  private Object splitBatch(Invocation invocation) throws Throwable {
+    final Object[] args = invocation.getArgs();
+    final MappedStatement ms = (MappedStatement) args[0];
+    if (!(args[1] instanceof Map) || !((Map) args[1]).containsKey(CrudProvider.LIST_KEY)) {
+      return invocation.proceed();
+    }
+    Map<String, Object> parameter = (Map<String, Object>) args[1];
+    Collection<?> rows = (Collection<?>) parameter.get(CrudProvider.LIST_KEY);
+    SqlCommandType type = ms.getSqlCommandType();
+    if (rows == null || rows.isEmpty()) {
+      return type == SqlCommandType.SELECT ? new ArrayList<>() : 0;
+    }
+
+    List<List<Object>> batches;
+    if (type == SqlCommandType.INSERT || type == SqlCommandType.UPDATE) {
+      batches = BatchSplitter.split(rows, batchSize, maxAllowedPacket);
+    } else {
+      batches = BatchSplitter.splitIds(rows, maxInSize);
+    }
+    if (type == SqlCommandType.SELECT) {
+      List<Object> result;
+      String pool = chunkExecutor != null && batches.size() > 1 ? chunkPool(invocation, ms, parameter, batches) : DynamicDataSource.MASTER_POOL;
+      if (!DynamicDataSource.MASTER_POOL.equals(pool)) {
+        result = queryParallel(ms, parameter, batches, pool);
+      } else {
+        result = new ArrayList<>();
+        for (List<Object> batch : batches) {
+          args[1] = copyWithList(parameter, batch);
+          result.addAll((List<Object>) invocation.proceed());
+        }
+      }
+      return BatchSplitter.sortByIds(rows, result);
+    }
+
+    int total = 0;
+    for (List<Object> batch : batches) {
+      args[1] = copyWithList(parameter, batch);
+      total += (Integer) invocation.proceed();
+    }
+    return total;
+  }
+
+  private static Map<String, Object> copyWithList(Map<String, Object> parameter, List<Object> batch) {
+    Map<String, Object> para = new HashMap<>(parameter);
+    para.put(CrudProvider.LIST_KEY, batch);
+    return para;
+  }
+
+  /**
+   * 在当前线程上确定并行查询使用的读库：事务中、当前连接写过库或者语句要读主库时返回MASTER_POOL，
+   * 这时只能在当前连接上逐批查询，其他连接看不到还没有提交或者还没有复制到读库的数据
+   */
+  private static String chunkPool(Invocation invocation, MappedStatement ms, Map<String, Object> parameter, List<List<Object>> batches) throws SQLException {
+    Connection conn = ((Executor) invocation.getTarget()).getTransaction().getConnection();
+    if (!conn.getAutoCommit()) {
+      return DynamicDataSource.MASTER_POOL;
+    }
+    return MasterSlaveInterceptor.readerPool(conn, ms, ms.getBoundSql(copyWithList(parameter, batches.get(0))));
+  }
+
+  /**
+   * 每一批在独立的SqlSession(独立的连接，读写分离时走pool指定的读库)中并行查询，不在当前事务中
+   */
+  @SuppressWarnings("unchecked")
+  private List<Object> queryParallel(final MappedStatement ms, Map<String, Object> parameter, List<List<Object>> batches, String pool) throws Throwable {
+    final Configuration conf = ms.getConfiguration();
+    final SqlSessionFactory factory = new DefaultSqlSessionFactory(conf);
+    DataSource ds = conf.getEnvironment().getDataSource();
+    List<Future<List<Object>>> futures = new ArrayList<>(batches.size());
+    for (List<Object> batch : batches) {
+      final Map<String, Object> para = copyWithList(parameter, batch);
+      // 粘滞在当前线程上判断，连接到第一次使用时才真正获取
+      final Connection reader = ds instanceof DynamicDataSource ? ((DynamicDataSource) ds).getReaderConnection(pool) : null;
+      futures.add(chunkExecutor.submit(new Callable<List<Object>>() {
+        @Override
+        public List<Object> call() throws Exception {
+          // spring的事务工厂不能包装已有的连接，直接用JdbcTransaction
+          SqlSession session = reader != null ? new DefaultSqlSession(conf, conf.newExecutor(new JdbcTransaction(reader)), true) : factory.openSession(true);
+          try {
+            return session.selectList(ms.getId(), para);
+          } finally {
+            CloseableUtil.closeQuietly(session);
+          }
+        }
+      }));
     }
+    List<Object> result = new ArrayList<>();
+    try {
+      for (Future<List<Object>> future : futures) {
+        result.addAll(future.get());
+      }
+    } catch (ExecutionException e) {
+      throw e.getCause();
+    } finally {
+      for (Future<List<Object>> future : futures) {
+        future.cancel(true);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * 改写分页语句，返回挂在BoundSql上的分页上下文，不是分页查询时返回null
+   */
+  private StatementContext pagination(Invocation invocation, StatementHandler target, MappedStatement mappedStatement) throws SQLException {
+    final BoundSql boundSql = target.getBoundSql();
+    Page page = findPageParameter(boundSql.getParameterObject());
     // 如果传入的参数中有分页对象且sql语句中有select，才做分页处理
-    String sql = boundSql.getSql().toLowerCase();
-    if (sql.startsWith("select") && page != null) {
-      // 采用物理分页后，就不需要mybatis的内存分页了，所以重置下面的两个参数
-      metaStatementHandler.setValue("delegate.rowBounds.offset", RowBounds.NO_ROW_OFFSET);
-      metaStatementHandler.setValue("delegate.rowBounds.limit", RowBounds.NO_ROW_LIMIT);
-      // 设置分页对象里的总记录数和总页数
-      Connection connection = (Connection) invocation.getArgs()[0];
-      MappedStatement mappedStatement = (MappedStatement) metaStatementHandler.getValue("delegate.mappedStatement");
-      if (page.isCountTotal()) {
-        int recordsTotal = getTotalCount(sql, connection, mappedStatement, boundSql);
+    String sql = boundSql.getSql();
+    SqlInfo info = SqlInfo.of(sql);
+    if (page == null || !info.isSelect()) {
+      return null;
+    }
+    StatementContext context = StatementContext.attach(boundSql, page);
+    PendingCount pending = null;
+    // 采用物理分页后，就不需要mybatis的内存分页了
+    MyBatisFields.resetRowBounds(target);
+    // 设置分页对象里的总记录数和总页数
+    Connection connection = (Connection) invocation.getArgs()[0];
+    if (page.isCountTotal()) {
+      String countSql = CountSqlBuilder.build(sql);
+      String strategy = effectiveCountStrategy();
+      if (page.getCountMode() == CountMode.ESTIMATED || page.getCountTimeout() > 0) {
+        page.setTotalNum(boundedCount(sql, countSql, connection, mappedStatement, boundSql, page));
+      } else if (COUNT_STRATEGY_COUNT.equals(strategy) && countExecutor != null) {
+        pending = countConcurrently(countSql, connection, mappedStatement, boundSql, page);
+      } else if (COUNT_STRATEGY_COUNT.equals(strategy)) {
+        int recordsTotal = countTotal(countSql, connection, mappedStatement, boundSql, page);
         page.setTotalNum(recordsTotal);
+      } else {
+        CountCache cache = countCache;
+        String table = cache == null ? null : getMapperMeta(mappedStatement).getTable();
+        String key = table == null ? null : cache.key(table, countSql, mappedStatement.getConfiguration(), boundSql);
+        Integer total = key == null ? null : cache.get(key);
+        page.setCountFromCache(total != null);
+        if (total != null) {
+          page.setTotalNum(total);
+        } else {
+          String countingSql = COUNT_STRATEGY_FOUND_ROWS.equals(strategy) ? CountSqlBuilder.foundRows(sql) : CountSqlBuilder.windowCount(sql, PendingCount.TOTAL_COLUMN);
+          if (countingSql == null) {
+            // 窗口函数加不到select列表里(distinct、union等)，改用单独的count语句
+            page.setTotalNum(countTotal(countSql, connection, mappedStatement, boundSql, page));
+          } else {
+            pending = new PendingCount(strategy, countSql, key, mappedStatement, boundSql);
+            sql = countingSql;
+          }
+        }
       }
-      // 最后重写sql
-      String pageSql = buildPageSql(sql, page);
-      metaStatementHandler.setValue("delegate.boundSql.sql", pageSql);
     }
+    context.pending = pending;
+    // 最后重写sql
+    String pageSql = null;
+    if (pending == null && isDeferredJoin(page, mappedStatement)) {
+      pageSql = DeferredJoinBuilder.build(sql, pageDialect);
+    }
+    if (pageSql == null) {
+      pageSql = buildPageSql(sql, page, boundSql, mappedStatement.getConfiguration());
+    } else {
+      bindPageParameters(page, boundSql, mappedStatement.getConfiguration());
+    }
+    MyBatisFields.setSql(boundSql, pageSql);
+    return context;
+  }
+
+  /**
+   * 开启了deferredJoinOffset并且offset足够大时，@AutoResultMap的实体查询改写成延迟关联；
+   * 改成了foundRows/窗口函数的语句不再改写
+   */
+  private boolean isDeferredJoin(Page page, MappedStatement ms) {
+    int threshold = deferredJoinOffset;
+    return threshold > 0 && pageDialect != null && !page.isKeyset() && page.getOffset() >= threshold
+      && getMapperMeta(ms).isFillResultMap();
   }
 
   /**
-   * 根据namespace查找需要的信息，避免每次反射的耗时操作
+   * 估算总行数，或者在Page.countTimeout内执行精确的count，超时后使用估算值
+   */
+  private int boundedCount(String sql, String countSql, Connection conn, MappedStatement ms, BoundSql boundSql, Page page) throws SQLException {
+    if (page.getCountMode() == CountMode.ESTIMATED) {
+      long estimate = estimateRows(sql, countSql, conn, ms, boundSql);
+      if (estimate >= 0) {
+        page.setCountFromCache(false);
+        page.setTotalEstimated(true);
+        return (int) Math.min(estimate, Integer.MAX_VALUE);
+      }
+      // 数据库不支持估算
+      return countTotal(countSql, conn, ms, boundSql, page, page.getCountTimeout());
+    }
+    try {
+      return countTotal(countSql, conn, ms, boundSql, page, page.getCountTimeout());
+    } catch (SQLException e) {
+      if (!isTimeout(e)) {
+        throw e;
+      }
+      logger.warn("count timeout after {}s, sql={}", page.getCountTimeout(), countSql);
+      long estimate = estimateRows(sql, countSql, conn, ms, boundSql);
+      if (estimate < 0) {
+        page.setTotalUnknown(true);
+        return 0;
+      }
+      page.setTotalEstimated(true);
+      return (int) Math.min(estimate, Integer.MAX_VALUE);
+    }
+  }
+
+  private static boolean isTimeout(SQLException e) {
+    // h2和postgresql取消语句时是57014，mysql是70100
+    return e instanceof SQLTimeoutException || "57014".equals(e.getSQLState()) || "70100".equals(e.getSQLState());
+  }
+
+  /**
+   * 估算查询结果的行数：没有过滤条件时读取表的统计信息，否则使用执行计划估算的行数，不支持时返回-1
+   */
+  private long estimateRows(String sql, String countSql, Connection conn, MappedStatement ms, BoundSql boundSql) throws SQLException {
+    Dialect d = pageDialect;
+    if (d == null) {
+      return -1;
+    }
+    String table = CountSqlBuilder.singleTable(countSql);
+    if (table != null) {
+      return tableRows(d, table, conn);
+    }
+    String explainSql = d.getExplainSql(sql);
+    if (explainSql == null) {
+      return -1;
+    }
+    BoundSql explainBoundSql = new BoundSql(ms.getConfiguration(), explainSql, boundSql.getParameterMappings(), boundSql.getParameterObject());
+    ParameterHandler parameterHandler = new DefaultParameterHandler(ms, boundSql.getParameterObject(), explainBoundSql);
+    PreparedStatement stmt = null;
+    ResultSet rs = null;
+    try {
+      stmt = conn.prepareStatement(explainSql);
+      parameterHandler.setParameters(stmt);
+      rs = stmt.executeQuery();
+      return d.getExplainRows(rs);
+    } finally {
+      CloseableUtil.closeQuietly(rs);
+      CloseableUtil.closeQuietly(stmt);
+    }
+  }
+
+  /**
+   * 表的统计行数，不支持时返回-1
+   */
+  private long tableRows(Dialect d, String table, Connection conn) throws SQLException {
+    String rowsSql = d.getTableRowsSql();
+    if (rowsSql == null) {
+      return -1;
+    }
+    PreparedStatement stmt = null;
+    ResultSet rs = null;
+    try {
+      stmt = conn.prepareStatement(rowsSql);
+      stmt.setString(1, table);
+      rs = stmt.executeQuery();
+      if (!rs.next()) {
+        return -1;
+      }
+      long rows = rs.getLong(1);
+      return rs.wasNull() ? -1 : rows;
+    } finally {
+      CloseableUtil.closeQuietly(rs);
+      CloseableUtil.closeQuietly(stmt);
+    }
+  }
+
+  /**
+   * 在独立的读库连接上执行count，分页语句在当前连接上同时执行，缓存命中时返回null
+   */
+  private PendingCount countConcurrently(final String countSql, Connection connection, final MappedStatement ms, BoundSql boundSql, Page page) throws SQLException {
+    CountCache cache = countCache;
+    String table = cache == null ? null : getMapperMeta(ms).getTable();
+    String key = table == null ? null : cache.key(table, countSql, ms.getConfiguration(), boundSql);
+    Integer total = key == null ? null : cache.get(key);
+    page.setCountFromCache(total != null);
+    if (total != null) {
+      page.setTotalNum(total);
+      return null;
+    }
+    final PendingCount pending = new PendingCount(COUNT_STRATEGY_COUNT, countSql, key, ms, boundSql);
+    final long timeoutMillis = countTimeoutMillis;
+    // 读主库还是读库要在当前线程上确定，count线程上没有事务和粘滞的状态
+    final DataSource ds = ms.getConfiguration().getEnvironment().getDataSource();
+    final Connection reader = ds instanceof DynamicDataSource ? ((DynamicDataSource) ds).getReaderConnection(MasterSlaveInterceptor.readerPool(connection, ms, boundSql)) : null;
+    pending.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    pending.future = countExecutor.submit(new Callable<Integer>() {
+      @Override
+      public Integer call() throws Exception {
+        Connection conn = reader != null ? reader : ds.getConnection();
+        try {
+          int seconds = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(timeoutMillis + 999));
+          return getTotalCount(countSql, conn, ms, pending.boundSql, pending.mappings, seconds);
+        } finally {
+          CloseableUtil.closeQuietly(conn);
+        }
+      }
+    });
+    return pending;
+  }
+
+  /**
+   * 分页语句执行完以后，从结果集、FOUND_ROWS()或者并行的count得到总行数
+   */
+  private void fillPendingCount(PendingCount pending, Page page) throws SQLException {
+    if (pending.future != null) {
+      Integer total = pending.await();
+      if (total == null) {
+        page.setTotalUnknown(true);
+        return;
+      }
+      page.setTotalNum(total);
+      CountCache cache = countCache;
+      if (cache != null && pending.cacheKey != null) {
+        cache.put(pending.cacheKey, total);
+      }
+      return;
+    }
+    Connection conn = pending.statement.getConnection();
+    long total;
+    if (COUNT_STRATEGY_FOUND_ROWS.equals(pending.strategy)) {
+      BoundSql foundRows = new BoundSql(pending.ms.getConfiguration(), FOUND_ROWS_SQL, Collections.<ParameterMapping>emptyList(), null);
+      total = getTotalCount(FOUND_ROWS_SQL, conn, pending.ms, foundRows);
+    } else if (pending.total >= 0) {
+      total = pending.total;
+    } else {
+      // 当前页没有数据，窗口函数拿不到总行数
+      total = getTotalCount(pending.countSql, conn, pending.ms, pending.boundSql, pending.mappings);
+    }
+    page.setTotalNum((int) total);
+    CountCache cache = countCache;
+    if (cache != null && pending.cacheKey != null) {
+      cache.put(pending.cacheKey, (int) total);
+    }
+  }
+
+  private MapperMeta getMapperMeta(MappedStatement ms) {
+    return getMapperMeta(ms.getConfiguration(), ms.getId());
+  }
+
+  /**
+   * 根据statement id查找需要的信息，启动时已经生成的直接返回，避免每次反射的耗时操作
    *
    * @param conf
    * @param statementId
    * @return
-   * @throws ClassNotFoundException
    */
-  private MapperMeta getMapperMeta(Configuration conf, final String statementId) throws ClassNotFoundException {
-    MapperMeta meta = CACHED.get(statementId);
+  private MapperMeta getMapperMeta(Configuration conf, final String statementId) {
+    MapperMeta meta = mapperMetas.get(statementId);
     if (meta == null) {
-      int pos = statementId.lastIndexOf('.');
-      String namespace = statementId.substring(0, pos);// mapper类名
-      String methodName = statementId.substring(pos + 1);
+      meta = buildMapperMetas(conf, Collections.singleton(statementId), true).get(statementId);
+    }
+    return meta;
+  }
 
-      Class<?> mapperClass;
-      mapperClass = Class.forName(namespace);
-      synchronized (this) {
-        meta = CACHED.get(statementId);
-        if (meta == null) {
-          meta = buildMapperMeta(conf, namespace, methodName, mapperClass);
-          CACHED.put(statementId, meta);
+  /**
+   * 为Configuration中所有的语句生成MapperMeta，并把自动生成的resultMap设置到语句上，
+   * 由MapperFactoryBean在注册mapper后调用，这样第一次查询时不需要再反射
+   *
+   * @param conf
+   */
+  public void prepareMapperMeta(Configuration conf) {
+    Map<String, MapperMeta> metas = buildMapperMetas(conf, conf.getMappedStatementNames(), false);
+    for (String id : conf.getMappedStatementNames()) {
+      MapperMeta meta = metas.get(id);
+      if (meta != null && meta.isFillResultMap()) {
+        MappedStatement ms = conf.getMappedStatement(id, false);
+        if (ms.getResultMaps() != meta.getResultMaps()) {
+          MyBatisFields.setResultMaps(ms, meta.getResultMaps());
         }
       }
     }
-    return meta;
   }
 
-  private MapperMeta buildMapperMeta(Configuration conf, String namespace, String methodName, Class<?> mapperClass) {
+  /**
+   * 生成还没有的MapperMeta，复制一份新的表再替换，返回新的表
+   *
+   * @param strict false时跳过出错的语句，等到第一次调用时再报错
+   */
+  private Map<String, MapperMeta> buildMapperMetas(Configuration conf, Collection<String> statementIds, boolean strict) {
+    synchronized (PaginationAutoMapInterceptor.class) {
+      Map<String, MapperMeta> metas = mapperMetas;
+      Map<String, MapperMeta> added = Maps.newHashMap();
+      for (String id : statementIds) {
+        // 不带namespace的短名字
+        if (id.indexOf('.') < 0 || metas.containsKey(id) || added.containsKey(id)) {
+          continue;
+        }
+        try {
+          added.put(id, buildMapperMeta(conf, id));
+        } catch (RuntimeException e) {
+          if (strict) {
+            throw e;
+          }
+          logger.warn("cannot prepare {}", id, e);
+        }
+      }
+      if (!added.isEmpty()) {
+        metas = ImmutableMap.<String, MapperMeta>builder().putAll(metas).putAll(added).build();
+        mapperMetas = metas;
+      }
+      return metas;
+    }
+  }
+
+  private MapperMeta buildMapperMeta(Configuration conf, String statementId) {
+    int pos = statementId.lastIndexOf('.');
+    String namespace = statementId.substring(0, pos);// mapper类名
+    String methodName = statementId.substring(pos + 1);
+    Class<?> mapperClass;
+    try {
+      mapperClass = Class.forName(namespace);
+    } catch (ClassNotFoundException e) {
+      // xml中的namespace不一定是类名
+      mapperClass = null;
+    }
+    MappedStatement ms = conf.hasStatement(statementId, false) ? conf.getMappedStatement(statementId, false) : null;
+    return buildMapperMeta(conf, ms, namespace, methodName, mapperClass);
+  }
+
+  private MapperMeta buildMapperMeta(Configuration conf, MappedStatement ms, String namespace, String methodName, Class<?> mapperClass) {
     Class<?> entityClazz = null;
     List<ResultMap> resultMaps = null;
-    Boolean fillEntity = Boolean.FALSE, fillResultMap = Boolean.FALSE;
+    Boolean fillEntity = Boolean.FALSE, fillResultMap = Boolean.FALSE, splitBatch = Boolean.FALSE, streaming = Boolean.FALSE, dirtyCheck = Boolean.FALSE,
+      estimatedCount = Boolean.FALSE;
+    String[] projection = null;
+    Class<?>[] parameterTypes = null;
     if (mapperClass != null) {
-      Method method = getMethodByName(methodName, mapperClass);
+      Method method = MapperMeta.findMethod(mapperClass, methodName);
       if (method != null) {
+        parameterTypes = method.getParameterTypes();
         if (method.isAnnotationPresent(AutoResultMap.class) || method.isAnnotationPresent(FillEntityType.class)) {
           FillEntityType annotation = method.getAnnotation(FillEntityType.class);
           if (annotation == null || annotation.value() == Object.class) {
@@ -205,32 +853,75 @@ public class PaginationAutoMapInterceptor extends BaseInterceptor implements Int
           } else {
             entityClazz = annotation.value();
           }
-          if (entityClazz != Object.class) {
+          if (entityClazz != null && entityClazz != Object.class) {
             fillEntity = Boolean.TRUE;
           }
 
-          if (method.isAnnotationPresent(AutoResultMap.class)) {
+          // 通用的父接口自己注册成mapper时没有实体类型，不能生成resultMap
+          if (fillEntity && method.isAnnotationPresent(AutoResultMap.class)) {
             // 重写resultMaps属性
             resultMaps = getResultMap(namespace, entityClazz, conf);
             fillResultMap = Boolean.TRUE;
           }
         }
+        splitBatch = method.isAnnotationPresent(SplitBatch.class);
+        estimatedCount = method.isAnnotationPresent(EstimatedCount.class);
+        Projection annotation = method.getAnnotation(Projection.class);
+        if (annotation != null) {
+          projection = annotation.value();
+        }
+        UpdateProvider update = method.getAnnotation(UpdateProvider.class);
+        if (update != null && update.type() == CrudProvider.class && ("update".equals(update.method()) || "save".equals(update.method()))) {
+          dirtyCheck = Boolean.TRUE;
+        }
+        // 方言不支持upsert时启动时报错(只跳过这条语句)，调用时再抛出同样的异常
+        InsertProvider insert = method.getAnnotation(InsertProvider.class);
+        if (insert != null && insert.type() == CrudProvider.class && insert.method().startsWith("upsert")
+          && pageDialect != null && !pageDialect.supportsUpsert()) {
+          throw new IllegalStateException("dialect " + dialect + " does not support upsert, used by " + namespace + '.' + methodName);
+        }
+        for (Class<?> type : method.getParameterTypes()) {
+          if (ResultHandler.class.isAssignableFrom(type)) {
+            streaming = Boolean.TRUE;
+          }
+        }
       }
     }
 
-    return new MapperMeta(entityClazz, fillEntity, fillResultMap, resultMaps);
+    MapperMeta meta = new MapperMeta(entityClazz, fillEntity, fillResultMap, resultMaps, splitBatch);
+    meta.setProjection(projection);
+    meta.setStreaming(streaming);
+    meta.setDirtyCheck(dirtyCheck);
+    meta.setTable(mapperClass == null ? null : resolveTable(namespace, entityClazz));
+    meta.setEstimatedCount(estimatedCount);
+    if (ms != null) {
+      // 只有查询才分页，找不到mapper方法时按parameterType判断，没有parameterType的xml语句什么参数都可能传
+      if (ms.getSqlCommandType() != SqlCommandType.SELECT) {
+        meta.setPageable(false);
+      } else if (parameterTypes != null) {
+        meta.setPageable(MapperMeta.acceptsPage(parameterTypes));
+      } else if (ms.getParameterMap() != null && ms.getParameterMap().getType() != null) {
+        meta.setPageable(MapperMeta.acceptsPage(ms.getParameterMap().getType()));
+      }
+      meta.setSnapshot(MapperMeta.mayReturnTracked(fillResultMap ? resultMaps : ms.getResultMaps()));
+    }
+    return meta;
   }
 
-  private Method getMethodByName(String methodName, Class<?> entityClazz) {
-    Method[] methods = entityClazz.getMethods();
-    Method method = null;
-    for (Method i : methods) {
-      if (methodName.equals(i.getName())) {
-        method = i;
-        break;
+  /**
+   * mapper对应的表名，用来在写入时让缓存的总行数失效
+   */
+  private String resolveTable(String namespace, Class<?> entityClazz) {
+    try {
+      Class<?> entity = entityClazz != null && entityClazz != Object.class ? entityClazz : getEntityClass(namespace);
+      if (entity == null || entity == Object.class) {
+        return null;
       }
+      return EntityUtil.getTableName(entity);
+    } catch (RuntimeException e) {
+      logger.warn("cannot resolve table of {}", namespace, e);
+      return null;
     }
-    return method;
   }
 
   private Class<?> getEntityClass(String namespace) {
@@ -247,7 +938,8 @@ public class PaginationAutoMapInterceptor extends BaseInterceptor implements Int
         }
         Type[] actualTypeArguments = ((ParameterizedType) type).getActualTypeArguments();
         logger.info("namespace:{}, EntityClass: {}", namespace, actualTypeArguments);
-        entityClazz = (Class<?>) actualTypeArguments[0];
+        // 通用的父接口(例如ICrudMapper<T>)本身没有实体类型
+        entityClazz = actualTypeArguments[0] instanceof Class ? (Class<?>) actualTypeArguments[0] : Object.class;
       } catch (ClassNotFoundException e) {
         logger.error("getEntityClass({})", namespace, e);
         entityClazz = Object.class;
@@ -350,34 +1042,81 @@ public class PaginationAutoMapInterceptor extends BaseInterceptor implements Int
     return javaType;
   }
 
+  /**
+   * 方言不支持FOUND_ROWS()或者窗口函数时使用单独的count语句
+   */
+  private String effectiveCountStrategy() {
+    Dialect d = pageDialect;
+    if (COUNT_STRATEGY_FOUND_ROWS.equals(countStrategy)) {
+      return d != null && d.supportsFoundRows() ? countStrategy : COUNT_STRATEGY_COUNT;
+    }
+    if (COUNT_STRATEGY_WINDOW.equals(countStrategy)) {
+      return d != null && d.supportsWindowFunctions() ? countStrategy : COUNT_STRATEGY_COUNT;
+    }
+    return COUNT_STRATEGY_COUNT;
+  }
+
+  /**
+   * 获取总记录数，开启了countCache时先查缓存
+   */
+  private int countTotal(String countSql, Connection conn, MappedStatement ms, BoundSql boundSql, Page page) throws SQLException {
+    return countTotal(countSql, conn, ms, boundSql, page, 0);
+  }
+
+  private int countTotal(String countSql, Connection conn, MappedStatement ms, BoundSql boundSql, Page page, int queryTimeout) throws SQLException {
+    CountCache cache = countCache;
+    String table = cache == null ? null : getMapperMeta(ms).getTable();
+    if (table == null) {
+      page.setCountFromCache(false);
+      return getTotalCount(countSql, conn, ms, boundSql, boundSql.getParameterMappings(), queryTimeout);
+    }
+    String key = cache.key(table, countSql, ms.getConfiguration(), boundSql);
+    Integer total = cache.get(key);
+    page.setCountFromCache(total != null);
+    if (total == null) {
+      total = getTotalCount(countSql, conn, ms, boundSql, boundSql.getParameterMappings(), queryTimeout);
+      cache.put(key, total);
+    }
+    return total;
+  }
+
   /**
    * 获取总记录数
    *
-   * @param sql      原始sql语句
+   * @param countSql count语句
    * @param conn
    * @param ms
    * @param boundSql
    * @return
    * @throws SQLException
    */
-  private int getTotalCount(String sql, Connection conn, MappedStatement ms, BoundSql boundSql) throws SQLException {
-    int start = sql.indexOf("from");
-    if (start == -1) {
-      throw new RuntimeException("statement has no 'from' keyword");
-    }
-    int stop = sql.indexOf("order by");
-    if (stop == -1) {
-      stop = sql.length();
-    }
+  private int getTotalCount(String countSql, Connection conn, MappedStatement ms, BoundSql boundSql) throws SQLException {
+    return getTotalCount(countSql, conn, ms, boundSql, boundSql.getParameterMappings());
+  }
+
+  /**
+   * 获取总记录数，mappings是原始语句(不含分页参数)的参数
+   */
+  private int getTotalCount(String countSql, Connection conn, MappedStatement ms, BoundSql boundSql, List<ParameterMapping> mappings) throws SQLException {
+    return getTotalCount(countSql, conn, ms, boundSql, mappings, 0);
+  }
 
-    String countSql = "select count(0) " + sql.substring(start, stop);
-    BoundSql countBoundSql = new BoundSql(ms.getConfiguration(), countSql, boundSql.getParameterMappings(), boundSql.getParameterObject());
+  /**
+   * 获取总记录数
+   *
+   * @param queryTimeout 语句超时时间(秒)，0表示不限制
+   */
+  private int getTotalCount(String countSql, Connection conn, MappedStatement ms, BoundSql boundSql, List<ParameterMapping> mappings, int queryTimeout) throws SQLException {
+    BoundSql countBoundSql = new BoundSql(ms.getConfiguration(), countSql, mappings, boundSql.getParameterObject());
     ParameterHandler parameterHandler = new DefaultParameterHandler(ms, boundSql.getParameterObject(), countBoundSql);
     PreparedStatement stmt = null;
     ResultSet rs = null;
     int count = 0;
     try {
       stmt = conn.prepareStatement(countSql);
+      if (queryTimeout > 0) {
+        stmt.setQueryTimeout(queryTimeout);
+      }
       // 通过parameterHandler给PreparedStatement对象设置参数
       parameterHandler.setParameters(stmt);
       rs = stmt.executeQuery();
@@ -392,54 +1131,218 @@ public class PaginationAutoMapInterceptor extends BaseInterceptor implements Int
   }
 
   /**
-   * 生成特定数据库的分页语句
+   * 生成分页语句，offset和limit作为绑定参数加到BoundSql最后
    *
    * @param sql
    * @param page
+   * @param boundSql
+   * @param conf
    * @return
    */
-  private String buildPageSql(String sql, Page page) {
-    if (page == null || dialect == null || dialect.equals("")) {
+  private String buildPageSql(String sql, Page page, BoundSql boundSql, Configuration conf) {
+    Dialect d = pageDialect;
+    if (page == null || d == null) {
       return sql;
     }
-    StringBuilder sb = new StringBuilder();
-    int startRow = page.getOffset();
-
-    if ("mysql".equals(dialect)) {
-      sb.append(sql);
-      sb.append(" limit ").append(startRow).append(",").append(page.getLimit());
-    } else if ("hsqldb".equals(dialect)) {
-      sb.append("select limit ");
-      sb.append(startRow);
-      sb.append(" ");
-      sb.append(page.getLimit());
-      sb.append(" ");
-      sb.append(sql.substring(6));
-    } else if ("oracle".equals(dialect)) {
-      sb.append("select * from (select tmp_tb.*,ROWNUM row_id from (");
-      sb.append(sql);
-      sb.append(")  tmp_tb where ROWNUM<=");
-      sb.append(startRow + page.getLimit());
-      sb.append(") where row_id>");
-      sb.append(startRow);
-    } else {
-      throw new IllegalArgumentException("SelectInterceptor error:does not support " + dialect);
+    bindPageParameters(page, boundSql, conf);
+    return d.getPageSql(sql);
+  }
+
+  /**
+   * 把offset和limit作为绑定参数加到BoundSql最后
+   */
+  private void bindPageParameters(Page page, BoundSql boundSql, Configuration conf) {
+    Dialect d = pageDialect;
+    int[] values = d.getPageParameters(page.getOffset(), page.getLimit());
+    // 不能直接修改原来的列表，静态语句的BoundSql共用同一个列表
+    List<ParameterMapping> mappings = new ArrayList<>(boundSql.getParameterMappings().size() + values.length);
+    mappings.addAll(boundSql.getParameterMappings());
+    for (int i = 0; i < values.length; i++) {
+      String name = PAGE_PARAMETER + i;
+      boundSql.setAdditionalParameter(name, values[i]);
+      mappings.add(new ParameterMapping.Builder(conf, name, Integer.class).build());
     }
-    return sb.toString();
+    MyBatisFields.setParameterMappings(boundSql, mappings);
   }
 
   public String getDialect() {
     return dialect;
   }
 
+  /**
+   * 设置数据库方言，可以是mysql、mysql8、h2、hsqldb、postgresql、oracle、oracle12c，或者Dialect实现类的类名
+   *
+   * @param dialect
+   */
   public void setDialect(String dialect) {
+    this.pageDialect = Strings.isNullOrEmpty(dialect) ? null : Dialects.of(dialect);
     this.dialect = dialect;
   }
 
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public long getMaxAllowedPacket() {
+    return maxAllowedPacket;
+  }
+
+  public void setMaxAllowedPacket(long maxAllowedPacket) {
+    this.maxAllowedPacket = maxAllowedPacket;
+  }
+
+  public int getMaxInSize() {
+    return maxInSize;
+  }
+
+  public void setMaxInSize(int maxInSize) {
+    this.maxInSize = maxInSize;
+  }
+
+  public int getStreamingFetchSize() {
+    return streamingFetchSize;
+  }
+
+  public void setStreamingFetchSize(int streamingFetchSize) {
+    this.streamingFetchSize = streamingFetchSize;
+  }
+
+  public int getCountCacheSeconds() {
+    return countCacheSeconds;
+  }
+
+  public void setCountCacheSeconds(int countCacheSeconds) {
+    this.countCacheSeconds = countCacheSeconds;
+    resetCountCache();
+  }
+
+  public int getCountCacheSize() {
+    return countCacheSize;
+  }
+
+  public void setCountCacheSize(int countCacheSize) {
+    this.countCacheSize = countCacheSize;
+    resetCountCache();
+  }
+
+  public String getCountStrategy() {
+    return countStrategy;
+  }
+
+  /**
+   * 设置总行数的获取方式：count、foundRows(mysql)或window(支持窗口函数的数据库)
+   *
+   * @param countStrategy
+   */
+  public void setCountStrategy(String countStrategy) {
+    if (!COUNT_STRATEGY_COUNT.equals(countStrategy) && !COUNT_STRATEGY_FOUND_ROWS.equals(countStrategy) && !COUNT_STRATEGY_WINDOW.equals(countStrategy)) {
+      throw new IllegalArgumentException("unknown countStrategy: " + countStrategy);
+    }
+    this.countStrategy = countStrategy;
+  }
+
+  /**
+   * 分页总行数的缓存，没有开启时返回null，可以通过stats()获取命中率
+   *
+   * @return
+   */
+  public CountCache getCountCache() {
+    return countCache;
+  }
+
+  private void resetCountCache() {
+    countCache = countCacheSeconds > 0 ? new CountCache(countCacheSize, countCacheSeconds) : null;
+  }
+
+  public int getCountThreads() {
+    return countThreads;
+  }
+
+  /**
+   * 开启并行count，count在独立的读库连接上执行，看不到当前事务中还没有提交的修改
+   *
+   * @param countThreads 线程数，0表示关闭
+   */
+  public synchronized void setCountThreads(int countThreads) {
+    ExecutorService old = this.countExecutor;
+    this.countThreads = countThreads;
+    if (countThreads > 0) {
+      ThreadFactory factory = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("mybatis-count-%d").build();
+      this.countExecutor = new ThreadPoolExecutor(countThreads, countThreads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(countThreads * 16), factory, new ThreadPoolExecutor.CallerRunsPolicy());
+    } else {
+      this.countExecutor = null;
+    }
+    if (old != null) {
+      old.shutdown();
+    }
+  }
+
+  public long getCountTimeoutMillis() {
+    return countTimeoutMillis;
+  }
+
+  public void setCountTimeoutMillis(long countTimeoutMillis) {
+    this.countTimeoutMillis = countTimeoutMillis;
+  }
+
+  public int getDeferredJoinOffset() {
+    return deferredJoinOffset;
+  }
+
+  public void setDeferredJoinOffset(int deferredJoinOffset) {
+    this.deferredJoinOffset = deferredJoinOffset;
+  }
+
+  public boolean isRouting() {
+    return routing;
+  }
+
+  public void setRouting(boolean routing) {
+    this.routing = routing;
+  }
+
+  public int getChunkThreads() {
+    return chunkThreads;
+  }
+
+  public synchronized void setChunkThreads(int chunkThreads) {
+    ExecutorService old = this.chunkExecutor;
+    this.chunkThreads = chunkThreads;
+    if (chunkThreads > 0) {
+      ThreadFactory factory = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("mybatis-chunk-%d").build();
+      this.chunkExecutor = new ThreadPoolExecutor(chunkThreads, chunkThreads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(chunkThreads * 16), factory, new ThreadPoolExecutor.CallerRunsPolicy());
+    } else {
+      this.chunkExecutor = null;
+    }
+    if (old != null) {
+      old.shutdown();
+    }
+  }
+
+  /**
+   * Executor在打开session时创建，这时还不知道要执行哪条语句，总是包装；
+   * StatementHandler和ResultSetHandler按语句的执行计划判断，没事可做时不生成代理
+   */
   @Override
   public Object plugin(Object target) {
-    if (target instanceof Executor || target instanceof StatementHandler || target instanceof ResultSetHandler) {
+    if (target instanceof Executor) {
       return Plugin.wrap(target, this);
+    } else if (target instanceof StatementHandler) {
+      MappedStatement ms = MyBatisFields.mappedStatement((StatementHandler) target);
+      return routing || ms == null || getMapperMeta(ms).isPageable() ? Plugin.wrap(target, this) : target;
+    } else if (target instanceof ResultSetHandler) {
+      MappedStatement ms = MyBatisFields.mappedStatement((ResultSetHandler) target);
+      if (ms == null) {
+        return Plugin.wrap(target, this);
+      }
+      MapperMeta meta = getMapperMeta(ms);
+      return meta.isPageable() || meta.isSnapshot() ? Plugin.wrap(target, this) : target;
     } else {
       return target;
     }
@@ -452,5 +1355,53 @@ public class PaginationAutoMapInterceptor extends BaseInterceptor implements Int
       dialect = DEFAULT_DIALECT;
     }
     setDialect(dialect);
+    String batchSize = properties.getProperty("batchSize");
+    if (!Strings.isNullOrEmpty(batchSize)) {
+      setBatchSize(Integer.parseInt(batchSize.trim()));
+    }
+    String maxAllowedPacket = properties.getProperty("maxAllowedPacket");
+    if (!Strings.isNullOrEmpty(maxAllowedPacket)) {
+      setMaxAllowedPacket(Long.parseLong(maxAllowedPacket.trim()));
+    }
+    String maxInSize = properties.getProperty("maxInSize");
+    if (!Strings.isNullOrEmpty(maxInSize)) {
+      setMaxInSize(Integer.parseInt(maxInSize.trim()));
+    }
+    String chunkThreads = properties.getProperty("chunkThreads");
+    if (!Strings.isNullOrEmpty(chunkThreads)) {
+      setChunkThreads(Integer.parseInt(chunkThreads.trim()));
+    }
+    String countCacheSize = properties.getProperty("countCacheSize");
+    if (!Strings.isNullOrEmpty(countCacheSize)) {
+      setCountCacheSize(Integer.parseInt(countCacheSize.trim()));
+    }
+    String countCacheSeconds = properties.getProperty("countCacheSeconds");
+    if (!Strings.isNullOrEmpty(countCacheSeconds)) {
+      setCountCacheSeconds(Integer.parseInt(countCacheSeconds.trim()));
+    }
+    String countStrategy = properties.getProperty("countStrategy");
+    if (!Strings.isNullOrEmpty(countStrategy)) {
+      setCountStrategy(countStrategy.trim());
+    }
+    String countThreads = properties.getProperty("countThreads");
+    if (!Strings.isNullOrEmpty(countThreads)) {
+      setCountThreads(Integer.parseInt(countThreads.trim()));
+    }
+    String countTimeoutMillis = properties.getProperty("countTimeoutMillis");
+    if (!Strings.isNullOrEmpty(countTimeoutMillis)) {
+      setCountTimeoutMillis(Long.parseLong(countTimeoutMillis.trim()));
+    }
+    String deferredJoinOffset = properties.getProperty("deferredJoinOffset");
+    if (!Strings.isNullOrEmpty(deferredJoinOffset)) {
+      setDeferredJoinOffset(Integer.parseInt(deferredJoinOffset.trim()));
+    }
+    String routing = properties.getProperty("routing");
+    if (!Strings.isNullOrEmpty(routing)) {
+      setRouting(Boolean.parseBoolean(routing.trim()));
+    }
+    String streamingFetchSize = properties.getProperty("streamingFetchSize");
+    if (!Strings.isNullOrEmpty(streamingFetchSize)) {
+      setStreamingFetchSize(Integer.parseInt(streamingFetchSize.trim()));
+    }
   }
 }
@@ -0,0 +1,128 @@
+package com.github.mybatis.interceptor;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 和分页语句在同一次查询中得到的总行数(FOUND_ROWS或者COUNT(*) OVER())，或者并行执行的count，在读取结果集时填充到Page中
+ */
+final class PendingCount {
+  private static final Logger LOG = LoggerFactory.getLogger(PendingCount.class);
+  /**
+   * COUNT(*) OVER()结果所在的列
+   */
+  static final String TOTAL_COLUMN = "mybatis_total_";
+
+  final String strategy;
+  final String countSql;
+  final String cacheKey;
+  final MappedStatement ms;
+  final BoundSql boundSql;
+  /**
+   * 原始语句的参数，BoundSql里的参数随后会加上分页参数
+   */
+  final List<ParameterMapping> mappings;
+  /**
+   * prepare得到的语句，FOUND_ROWS()需要在它的连接上执行
+   */
+  Statement statement;
+  /**
+   * 从结果集第一行读取的总行数，没有结果时为-1
+   */
+  long total = -1;
+  /**
+   * 并行执行的count
+   */
+  Future<Integer> future;
+  /**
+   * 并行count的截止时间(System.nanoTime)
+   */
+  long deadline;
+
+  PendingCount(String strategy, String countSql, String cacheKey, MappedStatement ms, BoundSql boundSql) {
+    this.strategy = strategy;
+    this.countSql = countSql;
+    this.cacheKey = cacheKey;
+    this.ms = ms;
+    this.boundSql = boundSql;
+    this.mappings = boundSql == null ? null : boundSql.getParameterMappings();
+  }
+
+  /**
+   * 等待并行的count，超时或者出错时返回null
+   */
+  Integer await() {
+    try {
+      return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      LOG.warn("count timeout, sql={}", countSql);
+    } catch (ExecutionException e) {
+      LOG.warn("count failed, sql={}", countSql, e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    future.cancel(true);
+    return null;
+  }
+
+  /**
+   * 分页语句没有正常结束，不再需要count的结果
+   */
+  void cancel() {
+    if (future != null) {
+      future.cancel(true);
+    }
+  }
+
+  /**
+   * 包装语句，读取结果集第一行时顺便取出总行数
+   */
+  Statement wrap(final Statement stmt) {
+    return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{Statement.class}, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        Object result = invokeTarget(stmt, method, args);
+        if (result instanceof ResultSet && "getResultSet".equals(method.getName())) {
+          return wrap((ResultSet) result);
+        }
+        return result;
+      }
+    });
+  }
+
+  private ResultSet wrap(final ResultSet rs) {
+    return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        Object result = invokeTarget(rs, method, args);
+        if (total < 0 && "next".equals(method.getName()) && Boolean.TRUE.equals(result)) {
+          total = rs.getLong(TOTAL_COLUMN);
+        }
+        return result;
+      }
+    });
+  }
+
+  private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package com.github.mybatis.interceptor;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * 语句的分类信息：是否select、是否用到last_insert_id()/row_count()，以及第一个关键字结束的位置。
+ *
+ * 直接在原始sql上逐个字符扫描，不区分大小写，跳过字符串常量、带引号的标识符和注释，不复制sql；
+ * 结果按sql缓存，同一条语句只扫描一次
+ */
+final class SqlInfo {
+  private static final Cache<String, SqlInfo> CACHE = CacheBuilder.newBuilder().maximumSize(10000).build();
+  private boolean select;
+  private boolean lastInsertId;
+  private boolean rowCount;
+  /**
+   * 第一个关键字结束的位置
+   */
+  private int firstWordEnd = -1;
+
+  private SqlInfo() {
+  }
+
+  static SqlInfo of(String sql) {
+    SqlInfo info = CACHE.getIfPresent(sql);
+    if (info == null) {
+      info = scan(sql);
+      CACHE.put(sql, info);
+    }
+    return info;
+  }
+
+  static SqlInfo scan(String sql) {
+    SqlInfo info = new SqlInfo();
+    int len = sql.length();
+    int i = 0;
+    while (i < len) {
+      char c = sql.charAt(i);
+      if (c == '\'' || c == '"' || c == '`') {
+        i = skipQuoted(sql, i, c);
+      } else if (c == '-' && i + 1 < len && sql.charAt(i + 1) == '-') {
+        while (i < len && sql.charAt(i) != '\n') {
+          i++;
+        }
+      } else if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+        int close = sql.indexOf("*/", i + 2);
+        i = close < 0 ? len : close + 2;
+      } else if (isWordPart(c)) {
+        int start = i;
+        while (i < len && isWordPart(sql.charAt(i))) {
+          i++;
+        }
+        int wordLen = i - start;
+        if (info.firstWordEnd < 0) {
+          info.firstWordEnd = i;
+          info.select = is(sql, start, wordLen, "select");
+        }
+        if (is(sql, start, wordLen, "last_insert_id")) {
+          info.lastInsertId = true;
+        } else if (is(sql, start, wordLen, "row_count")) {
+          info.rowCount = true;
+        }
+      } else {
+        i++;
+      }
+    }
+    return info;
+  }
+
+  private static int skipQuoted(String sql, int i, char quote) {
+    int len = sql.length();
+    i++;
+    while (i < len) {
+      char ch = sql.charAt(i++);
+      if (ch == '\\' && quote == '\'') {
+        i++;
+      } else if (ch == quote) {
+        if (i < len && sql.charAt(i) == quote) {
+          i++;
+        } else {
+          break;
+        }
+      }
+    }
+    return Math.min(i, len);
+  }
+
+  private static boolean isWordPart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+  }
+
+  private static boolean is(String sql, int start, int len, String word) {
+    return len == word.length() && sql.regionMatches(true, start, word, 0, len);
+  }
+
+  boolean isSelect() {
+    return select;
+  }
+
+  boolean usesLastInsertId() {
+    return lastInsertId;
+  }
+
+  boolean usesRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * 第一个关键字(select、insert等)结束的位置，没有关键字时返回-1
+   *
+   * @return
+   */
+  int getFirstWordEnd() {
+    return firstWordEnd;
+  }
+}
@@ -0,0 +1,55 @@
+package com.github.mybatis.interceptor;
+
+import com.github.mybatis.pagination.Page;
+import org.apache.ibatis.mapping.BoundSql;
+
+/**
+ * 一次分页查询在各个拦截阶段之间传递的状态。作为附加参数挂在BoundSql上，
+ * StatementHandler和ResultSetHandler共用同一个BoundSql，语句执行完以后随BoundSql一起丢弃，不依赖执行线程
+ */
+final class StatementContext {
+  /**
+   * BoundSql附加参数的名字，不会出现在sql的参数中
+   */
+  private static final String KEY = "_statement_context_";
+  final Page page;
+  /**
+   * 等待填充的总行数，不需要时为null
+   */
+  PendingCount pending;
+
+  private StatementContext(Page page) {
+    this.page = page;
+  }
+
+  static StatementContext attach(BoundSql boundSql, Page page) {
+    StatementContext context = new StatementContext(page);
+    boundSql.setAdditionalParameter(KEY, context);
+    return context;
+  }
+
+  /**
+   * 取出并移除上下文，每条语句的结果集只处理一次，没有分页的语句返回null
+   */
+  static StatementContext detach(BoundSql boundSql) {
+    if (boundSql == null || !boundSql.hasAdditionalParameter(KEY)) {
+      return null;
+    }
+    StatementContext context = (StatementContext) boundSql.getAdditionalParameter(KEY);
+    if (context != null) {
+      boundSql.setAdditionalParameter(KEY, null);
+    }
+    return context;
+  }
+
+  /**
+   * 语句出错时取消还在执行的count
+   */
+  void cancel() {
+    PendingCount p = pending;
+    pending = null;
+    if (p != null) {
+      p.cancel();
+    }
+  }
+}
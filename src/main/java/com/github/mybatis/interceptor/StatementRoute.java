@@ -0,0 +1,36 @@
+package com.github.mybatis.interceptor;
+
+import com.github.mybatis.spring.DynamicDataSource;
+
+/**
+ * 一条语句使用哪个数据源，启动时按注解和sql生成，执行时直接查表
+ */
+final class StatementRoute {
+  /**
+   * 写语句，以及用到last_insert_id()/row_count()的查询
+   */
+  static final StatementRoute WRITE = new StatementRoute(false, null);
+  static final StatementRoute REPLICA = new StatementRoute(true, null);
+  /**
+   * 注解了@ReadFromMaster的查询
+   */
+  static final StatementRoute MASTER = new StatementRoute(false, DynamicDataSource.MASTER_POOL);
+  /**
+   * 动态sql，每次执行时按sql判断
+   */
+  static final StatementRoute DYNAMIC = new StatementRoute(false, null);
+  final boolean readOnly;
+  /**
+   * 命名读库，为null时按readOnly选择主库或从库
+   */
+  final String pool;
+
+  private StatementRoute(boolean readOnly, String pool) {
+    this.readOnly = readOnly;
+    this.pool = pool;
+  }
+
+  static StatementRoute pool(String name) {
+    return new StatementRoute(true, name);
+  }
+}
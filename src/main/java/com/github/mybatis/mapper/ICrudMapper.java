@@ -1,12 +1,17 @@
 package com.github.mybatis.mapper;
 
 import com.github.mybatis.annotation.AutoResultMap;
+import com.github.mybatis.annotation.EstimatedCount;
 import com.github.mybatis.annotation.FillEntityType;
+import com.github.mybatis.annotation.SplitBatch;
 import com.github.mybatis.provider.CrudProvider;
 import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.session.ResultHandler;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 提供基本的增删改查操作
@@ -19,6 +24,26 @@ public interface ICrudMapper<T> {
   @AutoResultMap
   List<T> findAll();
 
+  /**
+   * 查找所有记录，只查询指定的属性，其他属性为null
+   *
+   * @param properties 实体的属性名
+   */
+  @SelectProvider(type = CrudProvider.class, method = "findAllWith")
+  @AutoResultMap
+  List<T> findAllWith(@Param(CrudProvider.PROJECTION_KEY) String... properties);
+
+  /**
+   * 逐行处理所有记录，不会把整个表读入内存，适合导出等大数据量的场景。
+   * 结果集读取完之前连接一直被占用，handler中不要再执行其他语句
+   *
+   * @param handler 每读取一行回调一次
+   */
+  @SelectProvider(type = CrudProvider.class, method = "findAll")
+  @AutoResultMap
+  @ResultType(Object.class)
+  void streamAll(ResultHandler handler);
+
   /**
    * 统计所有记录行数
    */
@@ -26,6 +51,15 @@ public interface ICrudMapper<T> {
   @FillEntityType
   int countAll();
 
+  /**
+   * 估算的记录行数，读取表的统计信息(mysql的information_schema.TABLES，h2的ROW_COUNT_ESTIMATE)，
+   * 比countAll快但不精确，数据库不支持时等同于countAll
+   */
+  @SelectProvider(type = CrudProvider.class, method = "countAll")
+  @FillEntityType
+  @EstimatedCount
+  long estimateAll();
+
   /**
    * 删除所有记录
    */
@@ -47,6 +81,23 @@ public interface ICrudMapper<T> {
   @AutoResultMap
   T findById(Serializable id);
 
+  /**
+   * 根据主键列表查找记录，主键过多时拆分成多条IN查询，结果按传入的主键顺序返回，不存在的主键跳过
+   */
+  @SelectProvider(type = CrudProvider.class, method = "findByIds")
+  @AutoResultMap
+  @SplitBatch
+  List<T> findByIds(@Param(CrudProvider.LIST_KEY) Collection<? extends Serializable> ids);
+
+  /**
+   * 根据主键列表查找记录，返回主键到记录的映射
+   */
+  @SelectProvider(type = CrudProvider.class, method = "findByIds")
+  @AutoResultMap
+  @SplitBatch
+  @MapKey("id")
+  Map<Long, T> findByIdMap(@Param(CrudProvider.LIST_KEY) Collection<? extends Serializable> ids);
+
   /**
    * 插入记录
    */
@@ -60,6 +111,41 @@ public interface ICrudMapper<T> {
   @Options(useGeneratedKeys = true)
   int insertAndGetId(T t);
 
+  /**
+   * 批量插入记录，生成INSERT ... VALUES (...),(...)语句，按行数和max_allowed_packet自动拆分
+   *
+   * @return 插入的总行数
+   */
+  @InsertProvider(type = CrudProvider.class, method = "insertBatch")
+  @SplitBatch
+  int insertBatch(@Param(CrudProvider.LIST_KEY) Collection<T> list);
+
+  /**
+   * 批量插入记录并且取回自动生成的ID，需要驱动返回每一行的主键(如mysql connector/j)
+   *
+   * @return 插入的总行数
+   */
+  @InsertProvider(type = CrudProvider.class, method = "insertBatch")
+  @Options(useGeneratedKeys = true)
+  @SplitBatch
+  int insertBatchAndGetIds(@Param(CrudProvider.LIST_KEY) Collection<T> list);
+
+  /**
+   * 插入或更新记录，主键或唯一索引冲突时更新非空的列，mysql生成ON DUPLICATE KEY UPDATE，h2生成MERGE
+   */
+  @InsertProvider(type = CrudProvider.class, method = "upsert")
+  @FillEntityType
+  int upsert(T t);
+
+  /**
+   * 批量插入或更新记录，和insertBatch一样自动拆分，一条语句即可同步上百行数据
+   *
+   * @return 数据库返回的影响行数，mysql中插入计1行，更新计2行
+   */
+  @InsertProvider(type = CrudProvider.class, method = "upsertBatch")
+  @SplitBatch
+  int upsertBatch(@Param(CrudProvider.LIST_KEY) Collection<T> list);
+
   /**
    * 更新记录
    */
@@ -84,4 +170,14 @@ public interface ICrudMapper<T> {
   @DeleteProvider(type = CrudProvider.class, method = "deleteById")
   @AutoResultMap
   int deleteById(Serializable id);
+
+  /**
+   * 根据主键列表删除记录，主键过多时拆分成多条IN语句
+   *
+   * @return 删除的总行数
+   */
+  @DeleteProvider(type = CrudProvider.class, method = "deleteByIds")
+  @FillEntityType
+  @SplitBatch
+  int deleteByIds(@Param(CrudProvider.LIST_KEY) Collection<? extends Serializable> ids);
 }
@@ -1,10 +1,13 @@
 package com.github.mybatis.mapper;
 
 import com.github.mybatis.annotation.AutoResultMap;
+import com.github.mybatis.annotation.FillEntityType;
 import com.github.mybatis.pagination.Page;
 import com.github.mybatis.provider.CrudProvider;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultType;
 import org.apache.ibatis.annotations.SelectProvider;
+import org.apache.ibatis.session.ResultHandler;
 
 /**
  * Mapper基类
@@ -54,4 +57,53 @@ public interface IPaginationMapper<T> {
   @SelectProvider(type = CrudProvider.class, method = "findByPage")
   @AutoResultMap
   Page<T> pagination4(@Param(CrudProvider.PAGE_KEY) Page page, @Param(CrudProvider.WHERE_KEY) String whereClause, @Param(CrudProvider.ORDER_KEY) String orderClause, @Param(CrudProvider.GROUP_KEY) String groupClause);
+
+  /**
+   * 按照过滤条件查找对应记录（分页），只查询指定的属性
+   *
+   * @param page        分页信息，查询后设置总条数
+   * @param whereClause 查询条件
+   * @param orderClause 排序条件
+   * @param properties  实体的属性名
+   * @return
+   */
+  @SelectProvider(type = CrudProvider.class, method = "findByPage")
+  @AutoResultMap
+  Page<T> paginationWith(@Param(CrudProvider.PAGE_KEY) Page page, @Param(CrudProvider.WHERE_KEY) String whereClause, @Param(CrudProvider.ORDER_KEY) String orderClause, @Param(CrudProvider.PROJECTION_KEY) String... properties);
+
+  /**
+   * 按照过滤条件逐行处理对应记录，不会把整个结果集读入内存
+   *
+   * @param whereClause 查询条件
+   * @param orderClause 排序条件
+   * @param handler     每读取一行回调一次
+   */
+  @SelectProvider(type = CrudProvider.class, method = "findByPage")
+  @AutoResultMap
+  @ResultType(Object.class)
+  void streamWhere(@Param(CrudProvider.WHERE_KEY) String whereClause, @Param(CrudProvider.ORDER_KEY) String orderClause, ResultHandler handler);
+
+  /**
+   * 在某个分表(@TableSplitPolicy)中按照过滤条件查找对应记录（分页），多个分表的合并查询见ShardUtil
+   *
+   * @param postfix     分表后缀
+   * @param page        分页信息，查询后设置总条数
+   * @param whereClause 查询条件
+   * @param orderClause 排序条件，keyset分页时忽略
+   * @return
+   */
+  @SelectProvider(type = CrudProvider.class, method = "findByPage")
+  @AutoResultMap
+  Page<T> paginationShard(@Param(CrudProvider.POSTFIX_KEY) String postfix, @Param(CrudProvider.PAGE_KEY) Page page, @Param(CrudProvider.WHERE_KEY) String whereClause, @Param(CrudProvider.ORDER_KEY) String orderClause);
+
+  /**
+   * 统计某个分表中满足条件的行数
+   *
+   * @param postfix     分表后缀
+   * @param whereClause 查询条件，可以为null
+   * @return
+   */
+  @SelectProvider(type = CrudProvider.class, method = "countWhere")
+  @FillEntityType
+  int countShard(@Param(CrudProvider.POSTFIX_KEY) String postfix, @Param(CrudProvider.WHERE_KEY) String whereClause);
 }
@@ -0,0 +1,15 @@
+package com.github.mybatis.pagination;
+
+/**
+ * 分页总行数的计算方式
+ */
+public enum CountMode {
+  /**
+   * 精确的count，设置了Page.countTimeout时超时后退回到估算值
+   */
+  EXACT,
+  /**
+   * 估算值：没有过滤条件时读取表的统计信息，否则使用EXPLAIN估算的行数；数据库不支持时使用精确的count
+   */
+  ESTIMATED
+}
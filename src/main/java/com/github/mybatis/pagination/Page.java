@@ -27,6 +27,46 @@ public class Page<T> extends ArrayList<T> {
    */
   private int totalNum;
 
+  /**
+   * 总行数是否来自缓存
+   */
+  private boolean countFromCache;
+
+  /**
+   * 并行count超时或者出错，总行数未知
+   */
+  private boolean totalUnknown;
+
+  /**
+   * 总行数的计算方式，默认精确count
+   */
+  private CountMode countMode = CountMode.EXACT;
+
+  /**
+   * 精确count的超时时间(秒)，超时后使用估算值，0表示不限制
+   */
+  private int countTimeout;
+
+  /**
+   * 总行数是估算值
+   */
+  private boolean totalEstimated;
+
+  /**
+   * keyset分页的排序键，实体属性名，降序时后面加" desc"，例如{"score desc", "id desc"}
+   */
+  private String[] sortKeys;
+
+  /**
+   * keyset分页时上一页最后一行的排序键取值，为空表示第一页
+   */
+  private Object[] cursor;
+
+  /**
+   * 本页最后一行的排序键取值，本页不满时为空(没有下一页)
+   */
+  private Object[] nextCursor;
+
   public Page() {
   }
 
@@ -41,6 +81,81 @@ public class Page<T> extends ArrayList<T> {
     this.countTotal = countTotal;
   }
 
+  /**
+   * keyset(seek)分页，按排序键定位上一页的结尾，不使用offset，翻到很深的页也不需要扫描跳过的行。
+   * 只有CrudProvider.findByPage生成的语句支持，默认不计算总行数
+   *
+   * @param pageSize 一页包含元素个数
+   * @param sortKeys 排序键，实体属性名，降序时后面加" desc"，最后一个排序键需要保证唯一(例如id)
+   * @param <T>
+   * @return
+   */
+  public static <T> Page<T> keyset(int pageSize, String... sortKeys) {
+    Page<T> page = new Page<>(1, pageSize, false);
+    page.setSortKeys(sortKeys);
+    return page;
+  }
+
+  /**
+   * 下一页，排序键和页大小不变
+   *
+   * @return 没有下一页时返回null
+   */
+  public Page<T> next() {
+    if (nextCursor == null) {
+      return null;
+    }
+    Page<T> page = new Page<>(pageNo + 1, pageSize, countTotal);
+    page.setSortKeys(sortKeys);
+    page.setCursor(nextCursor);
+    return page;
+  }
+
+  /**
+   * 排序键中的属性名，排序键格式为"属性名[ asc|desc]"
+   *
+   * @param sortKey
+   * @return
+   */
+  public static String sortProperty(String sortKey) {
+    String key = sortKey.trim();
+    int pos = key.indexOf(' ');
+    return pos < 0 ? key : key.substring(0, pos);
+  }
+
+  public static boolean isDesc(String sortKey) {
+    String key = sortKey.trim();
+    return key.length() > 5 && key.regionMatches(true, key.length() - 5, " desc", 0, 5);
+  }
+
+  public boolean isKeyset() {
+    return sortKeys != null && sortKeys.length > 0;
+  }
+
+  public String[] getSortKeys() {
+    return sortKeys;
+  }
+
+  public void setSortKeys(String[] sortKeys) {
+    this.sortKeys = sortKeys;
+  }
+
+  public Object[] getCursor() {
+    return cursor;
+  }
+
+  public void setCursor(Object[] cursor) {
+    this.cursor = cursor;
+  }
+
+  public Object[] getNextCursor() {
+    return nextCursor;
+  }
+
+  public void setNextCursor(Object[] nextCursor) {
+    this.nextCursor = nextCursor;
+  }
+
   public int getPageNo() {
     return pageNo;
   }
@@ -73,7 +188,50 @@ public class Page<T> extends ArrayList<T> {
     this.totalNum = totalNum;
   }
 
+  public boolean isCountFromCache() {
+    return countFromCache;
+  }
+
+  public void setCountFromCache(boolean countFromCache) {
+    this.countFromCache = countFromCache;
+  }
+
+  public boolean isTotalUnknown() {
+    return totalUnknown;
+  }
+
+  public void setTotalUnknown(boolean totalUnknown) {
+    this.totalUnknown = totalUnknown;
+  }
+
+  public CountMode getCountMode() {
+    return countMode;
+  }
+
+  public void setCountMode(CountMode countMode) {
+    this.countMode = countMode;
+  }
+
+  public int getCountTimeout() {
+    return countTimeout;
+  }
+
+  public void setCountTimeout(int countTimeout) {
+    this.countTimeout = countTimeout;
+  }
+
+  public boolean isTotalEstimated() {
+    return totalEstimated;
+  }
+
+  public void setTotalEstimated(boolean totalEstimated) {
+    this.totalEstimated = totalEstimated;
+  }
+
   public int getOffset() {
+    if (isKeyset()) {
+      return 0;
+    }
     int offset = (pageNo - 1) * pageSize;
     return offset < 0 ? 0 : offset;
   }
@@ -0,0 +1,85 @@
+package com.github.mybatis.pagination.dialect;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 数据库方言，生成分页语句。
+ *
+ * offset和limit用?占位并作为绑定参数传入，不同页码的分页语句是同一条sql，
+ * 可以复用连接池的PreparedStatement缓存和数据库的执行计划缓存。
+ * 分页参数的占位符必须都在原语句之后
+ */
+public interface Dialect {
+  /**
+   * 生成分页语句
+   *
+   * @param sql 原始sql语句
+   * @return
+   */
+  String getPageSql(String sql);
+
+  /**
+   * 按占位符的顺序返回分页参数
+   *
+   * @param offset 起始行，从0开始
+   * @param limit  最多返回的行数
+   * @return
+   */
+  int[] getPageParameters(int offset, int limit);
+
+  /**
+   * 是否支持SQL_CALC_FOUND_ROWS和FOUND_ROWS()
+   *
+   * @return
+   */
+  boolean supportsFoundRows();
+
+  /**
+   * 是否支持COUNT(*) OVER()这样的窗口函数
+   *
+   * @return
+   */
+  boolean supportsWindowFunctions();
+
+  /**
+   * 读取表的统计行数的语句，唯一的参数是表名，不支持时返回null
+   *
+   * @return
+   */
+  String getTableRowsSql();
+
+  /**
+   * 获取执行计划的语句，用来估算查询的结果行数，不支持时返回null
+   *
+   * @param sql 原始sql语句
+   * @return
+   */
+  String getExplainSql(String sql);
+
+  /**
+   * 从执行计划中读取估算的行数
+   *
+   * @param rs getExplainSql的执行结果
+   * @return 无法估算时返回-1
+   * @throws SQLException
+   */
+  long getExplainRows(ResultSet rs) throws SQLException;
+
+  /**
+   * 是否支持插入或更新(upsert)，不支持时使用upsert的mapper在启动时报错
+   *
+   * @return
+   */
+  boolean supportsUpsert();
+
+  /**
+   * 生成插入或更新多行的语句，按主键id判断记录是否存在，已存在的行只更新传入的列
+   *
+   * @param table   表名
+   * @param columns 写入的列名，不包括id时全部插入新行
+   * @param rows    每行按columns顺序的参数占位符
+   * @return 不支持upsert时返回null
+   */
+  String getUpsertSql(String table, String[] columns, String[][] rows);
+}
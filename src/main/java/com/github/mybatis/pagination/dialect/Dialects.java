@@ -0,0 +1,44 @@
+package com.github.mybatis.pagination.dialect;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+/**
+ * 根据名字获取方言，内置mysql(5.x)、mysql8、h2、hsqldb、postgresql、oracle(ROWNUM，12c之前)、oracle12c，
+ * 其他数据库可以配置实现了Dialect接口的类名
+ */
+public final class Dialects {
+  private static final Map<String, Dialect> BUILTIN = ImmutableMap.<String, Dialect>builder()
+    .put("mysql", new MySqlDialect())
+    .put("mysql8", new MySql8Dialect())
+    .put("h2", new H2Dialect())
+    .put("hsqldb", new HsqlDbDialect())
+    .put("postgresql", new PostgreSqlDialect())
+    .put("oracle", new OracleDialect())
+    .put("oracle12c", new Oracle12cDialect())
+    .build();
+
+  private Dialects() {
+  }
+
+  /**
+   * 获取方言
+   *
+   * @param name 内置方言的名字或者Dialect实现类的类名
+   * @return
+   */
+  public static Dialect of(String name) {
+    Dialect dialect = BUILTIN.get(name);
+    if (dialect != null) {
+      return dialect;
+    }
+    try {
+      return (Dialect) Class.forName(name, true, Thread.currentThread().getContextClassLoader()).newInstance();
+    } catch (ClassNotFoundException e) {
+      throw new IllegalArgumentException("does not support dialect " + name, e);
+    } catch (ReflectiveOperationException | ClassCastException e) {
+      throw new IllegalArgumentException("cannot create dialect " + name, e);
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package com.github.mybatis.pagination.dialect;
+
+import java.sql.ResultSet;
+
+/**
+ * h2，hsqldb 2.x的分页也使用同样的语法
+ */
+public class H2Dialect extends LimitOffsetDialect {
+  /**
+   * h2 1.4没有窗口函数
+   */
+  @Override
+  public boolean supportsWindowFunctions() {
+    return false;
+  }
+
+  @Override
+  public String getTableRowsSql() {
+    return "select row_count_estimate from information_schema.tables where table_schema = schema() and upper(table_name) = upper(?)";
+  }
+
+  /**
+   * h2的执行计划里没有估算的行数
+   */
+  @Override
+  public String getExplainSql(String sql) {
+    return null;
+  }
+
+  @Override
+  public long getExplainRows(ResultSet rs) {
+    return -1;
+  }
+
+  @Override
+  public boolean supportsUpsert() {
+    return true;
+  }
+
+  /**
+   * MERGE INTO ... KEY(id)，KEY列必须出现在列清单中，没有id时写入NULL由自增列生成
+   */
+  @Override
+  public String getUpsertSql(String table, String[] columns, String[][] rows) {
+    boolean hasId = UpsertSql.hasId(columns);
+    StringBuilder sbd = UpsertSql.newBuilder(columns, rows);
+    sbd.append("MERGE INTO ").append(table).append(" (");
+    if (!hasId) {
+      sbd.append("`id`,");
+    }
+    UpsertSql.appendColumns(sbd, columns, '`');
+    sbd.append(") KEY(`id`) VALUES ");
+    if (hasId) {
+      UpsertSql.appendValues(sbd, rows);
+    } else {
+      for (int row = 0; row < rows.length; row++) {
+        if (row != 0) {
+          sbd.append(',');
+        }
+        sbd.append("(NULL");
+        for (String value : rows[row]) {
+          sbd.append(',').append(value);
+        }
+        sbd.append(')');
+      }
+    }
+    return sbd.toString();
+  }
+}
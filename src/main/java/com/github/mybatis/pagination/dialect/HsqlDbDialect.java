@@ -0,0 +1,19 @@
+package com.github.mybatis.pagination.dialect;
+
+/**
+ * hsqldb 2.x，分页和h2相同
+ */
+public class HsqlDbDialect extends H2Dialect {
+  /**
+   * hsqldb没有h2的MERGE INTO ... KEY()语法
+   */
+  @Override
+  public boolean supportsUpsert() {
+    return false;
+  }
+
+  @Override
+  public String getUpsertSql(String table, String[] columns, String[][] rows) {
+    return null;
+  }
+}
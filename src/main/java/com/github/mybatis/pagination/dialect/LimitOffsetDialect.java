@@ -0,0 +1,21 @@
+package com.github.mybatis.pagination.dialect;
+
+/**
+ * LIMIT ? OFFSET ? 语法的分页
+ */
+public abstract class LimitOffsetDialect implements Dialect {
+  @Override
+  public String getPageSql(String sql) {
+    return sql + " limit ? offset ?";
+  }
+
+  @Override
+  public int[] getPageParameters(int offset, int limit) {
+    return new int[]{limit, offset};
+  }
+
+  @Override
+  public boolean supportsFoundRows() {
+    return false;
+  }
+}
@@ -0,0 +1,11 @@
+package com.github.mybatis.pagination.dialect;
+
+/**
+ * mysql 8.0以上，支持窗口函数
+ */
+public class MySql8Dialect extends MySqlDialect {
+  @Override
+  public boolean supportsWindowFunctions() {
+    return true;
+  }
+}
@@ -0,0 +1,98 @@
+package com.github.mybatis.pagination.dialect;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * mysql，LIMIT ?, ?
+ */
+public class MySqlDialect implements Dialect {
+  @Override
+  public String getPageSql(String sql) {
+    return sql + " limit ?, ?";
+  }
+
+  @Override
+  public int[] getPageParameters(int offset, int limit) {
+    return new int[]{offset, limit};
+  }
+
+  @Override
+  public boolean supportsFoundRows() {
+    return true;
+  }
+
+  /**
+   * 5.x没有窗口函数，8.0以上使用mysql8
+   */
+  @Override
+  public boolean supportsWindowFunctions() {
+    return false;
+  }
+
+  @Override
+  public String getTableRowsSql() {
+    return "select table_rows from information_schema.tables where table_schema = database() and table_name = ?";
+  }
+
+  @Override
+  public String getExplainSql(String sql) {
+    return "explain " + sql;
+  }
+
+  /**
+   * 最外层查询(id最小)各个表的rows*filtered/100相乘
+   */
+  @Override
+  public long getExplainRows(ResultSet rs) throws SQLException {
+    double rows = -1;
+    long firstId = -1;
+    while (rs.next()) {
+      long id = rs.getLong("id");
+      if (firstId >= 0 && id != firstId) {
+        break;
+      }
+      firstId = id;
+      double filtered = 100;
+      try {
+        filtered = rs.getDouble("filtered");
+      } catch (SQLException ignored) {
+        // 5.7以前需要EXPLAIN EXTENDED才有filtered列
+      }
+      double n = rs.getLong("rows") * filtered / 100;
+      rows = rows < 0 ? n : rows * n;
+    }
+    return rows < 0 ? -1 : Math.round(rows);
+  }
+
+  @Override
+  public boolean supportsUpsert() {
+    return true;
+  }
+
+  /**
+   * INSERT ... ON DUPLICATE KEY UPDATE，除了主键，唯一索引冲突时也会更新
+   */
+  @Override
+  public String getUpsertSql(String table, String[] columns, String[][] rows) {
+    StringBuilder sbd = UpsertSql.newBuilder(columns, rows);
+    sbd.append("INSERT INTO ").append(table).append(" (");
+    UpsertSql.appendColumns(sbd, columns, '`');
+    sbd.append(") VALUES ");
+    UpsertSql.appendValues(sbd, rows);
+    sbd.append(" ON DUPLICATE KEY UPDATE ");
+    int n = 0;
+    for (String column : columns) {
+      if (!UpsertSql.ID.equals(column)) {
+        if (n++ != 0) {
+          sbd.append(',');
+        }
+        sbd.append('`').append(column).append("`=VALUES(`").append(column).append("`)");
+      }
+    }
+    if (n == 0) {
+      sbd.append("`id`=`id`");
+    }
+    return sbd.toString();
+  }
+}
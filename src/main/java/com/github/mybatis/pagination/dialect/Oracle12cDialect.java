@@ -0,0 +1,16 @@
+package com.github.mybatis.pagination.dialect;
+
+/**
+ * oracle 12c以上，OFFSET ? ROWS FETCH NEXT ? ROWS ONLY
+ */
+public class Oracle12cDialect extends OracleDialect {
+  @Override
+  public String getPageSql(String sql) {
+    return sql + " offset ? rows fetch next ? rows only";
+  }
+
+  @Override
+  public int[] getPageParameters(int offset, int limit) {
+    return new int[]{offset, limit};
+  }
+}
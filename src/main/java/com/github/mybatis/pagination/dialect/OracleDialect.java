@@ -0,0 +1,96 @@
+package com.github.mybatis.pagination.dialect;
+
+import java.sql.ResultSet;
+
+/**
+ * oracle 12c之前的版本，通过ROWNUM分页
+ */
+public class OracleDialect implements Dialect {
+  @Override
+  public String getPageSql(String sql) {
+    return "select * from (select tmp_tb.*,ROWNUM row_id from (" + sql + ")  tmp_tb where ROWNUM<=?) where row_id>?";
+  }
+
+  @Override
+  public int[] getPageParameters(int offset, int limit) {
+    return new int[]{offset + limit, offset};
+  }
+
+  @Override
+  public boolean supportsFoundRows() {
+    return false;
+  }
+
+  @Override
+  public boolean supportsWindowFunctions() {
+    return true;
+  }
+
+  /**
+   * 最近一次收集统计信息时的行数
+   */
+  @Override
+  public String getTableRowsSql() {
+    return "select num_rows from user_tables where table_name = upper(?)";
+  }
+
+  /**
+   * EXPLAIN PLAN需要写入plan_table，不使用
+   */
+  @Override
+  public String getExplainSql(String sql) {
+    return null;
+  }
+
+  @Override
+  public long getExplainRows(ResultSet rs) {
+    return -1;
+  }
+
+  @Override
+  public boolean supportsUpsert() {
+    return true;
+  }
+
+  /**
+   * MERGE INTO t USING (SELECT ... FROM dual UNION ALL ...) s ON (t.id = s.id)，
+   * 没有id时全部插入；ON中用到的id不能出现在UPDATE SET中
+   */
+  @Override
+  public String getUpsertSql(String table, String[] columns, String[][] rows) {
+    StringBuilder sbd = UpsertSql.newBuilder(columns, rows);
+    sbd.append("MERGE INTO ").append(table).append(" tmp_t USING (");
+    for (int row = 0; row < rows.length; row++) {
+      if (row != 0) {
+        sbd.append(" UNION ALL ");
+      }
+      sbd.append("SELECT ");
+      for (int i = 0; i < columns.length; i++) {
+        if (i != 0) {
+          sbd.append(',');
+        }
+        sbd.append(rows[row][i]).append(' ').append(columns[i]);
+      }
+      sbd.append(" FROM dual");
+    }
+    sbd.append(") tmp_s ON (").append(UpsertSql.hasId(columns) ? "tmp_t.id = tmp_s.id" : "1 = 0").append(')');
+    int n = 0;
+    for (String column : columns) {
+      if (!UpsertSql.ID.equals(column)) {
+        sbd.append(n++ == 0 ? " WHEN MATCHED THEN UPDATE SET " : ",");
+        sbd.append("tmp_t.").append(column).append(" = tmp_s.").append(column);
+      }
+    }
+    sbd.append(" WHEN NOT MATCHED THEN INSERT (");
+    UpsertSql.appendColumns(sbd, columns, (char) 0);
+    sbd.append(") VALUES (");
+    for (int i = 0; i < columns.length; i++) {
+      if (i != 0) {
+        sbd.append(',');
+      }
+      sbd.append("tmp_s.").append(columns[i]);
+    }
+    sbd.append(')');
+    return sbd.toString();
+  }
+}
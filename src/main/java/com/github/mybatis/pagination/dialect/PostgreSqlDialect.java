@@ -0,0 +1,72 @@
+package com.github.mybatis.pagination.dialect;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * postgresql
+ */
+public class PostgreSqlDialect extends LimitOffsetDialect {
+  private static final Pattern ROWS = Pattern.compile("rows=(\\d+)");
+
+  @Override
+  public boolean supportsWindowFunctions() {
+    return true;
+  }
+
+  /**
+   * 没有analyze过的表reltuples为-1(pg14以上)或者0
+   */
+  @Override
+  public String getTableRowsSql() {
+    return "select reltuples::bigint from pg_class where oid = to_regclass(?)";
+  }
+
+  @Override
+  public String getExplainSql(String sql) {
+    return "explain " + sql;
+  }
+
+  /**
+   * 第一行是最外层节点，例如 Seq Scan on t  (cost=0.00..35.50 rows=2550 width=4)
+   */
+  @Override
+  public long getExplainRows(ResultSet rs) throws SQLException {
+    if (!rs.next()) {
+      return -1;
+    }
+    Matcher m = ROWS.matcher(rs.getString(1));
+    return m.find() ? Long.parseLong(m.group(1)) : -1;
+  }
+
+  @Override
+  public boolean supportsUpsert() {
+    return true;
+  }
+
+  /**
+   * INSERT ... ON CONFLICT (id) DO UPDATE，需要9.5以上
+   */
+  @Override
+  public String getUpsertSql(String table, String[] columns, String[][] rows) {
+    StringBuilder sbd = UpsertSql.newBuilder(columns, rows);
+    sbd.append("INSERT INTO ").append(table).append(" (");
+    UpsertSql.appendColumns(sbd, columns, '"');
+    sbd.append(") VALUES ");
+    UpsertSql.appendValues(sbd, rows);
+    sbd.append(" ON CONFLICT (\"id\") DO ");
+    int n = 0;
+    for (String column : columns) {
+      if (!UpsertSql.ID.equals(column)) {
+        sbd.append(n++ == 0 ? "UPDATE SET " : ",");
+        sbd.append('"').append(column).append("\"=EXCLUDED.\"").append(column).append('"');
+      }
+    }
+    if (n == 0) {
+      sbd.append("NOTHING");
+    }
+    return sbd.toString();
+  }
+}
@@ -0,0 +1,63 @@
+package com.github.mybatis.pagination.dialect;
+
+/**
+ * 拼接upsert语句的公共部分
+ */
+final class UpsertSql {
+  static final String ID = "id";
+
+  private UpsertSql() {
+  }
+
+  static boolean hasId(String[] columns) {
+    for (String column : columns) {
+      if (ID.equals(column)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * 追加逗号分隔的列名，quote为0时不加引号
+   */
+  static void appendColumns(StringBuilder sbd, String[] columns, char quote) {
+    for (int i = 0; i < columns.length; i++) {
+      if (i != 0) {
+        sbd.append(',');
+      }
+      appendName(sbd, columns[i], quote);
+    }
+  }
+
+  static void appendName(StringBuilder sbd, String name, char quote) {
+    if (quote == 0) {
+      sbd.append(name);
+    } else {
+      sbd.append(quote).append(name).append(quote);
+    }
+  }
+
+  /**
+   * 追加(?,?),(?,?)形式的多行VALUES
+   */
+  static void appendValues(StringBuilder sbd, String[][] rows) {
+    for (int row = 0; row < rows.length; row++) {
+      if (row != 0) {
+        sbd.append(',');
+      }
+      sbd.append('(');
+      for (int i = 0; i < rows[row].length; i++) {
+        if (i != 0) {
+          sbd.append(',');
+        }
+        sbd.append(rows[row][i]);
+      }
+      sbd.append(')');
+    }
+  }
+
+  static StringBuilder newBuilder(String[] columns, String[][] rows) {
+    return new StringBuilder(128 + columns.length * (16 + rows.length * 24));
+  }
+}
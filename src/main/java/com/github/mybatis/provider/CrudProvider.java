@@ -1,11 +1,17 @@
 package com.github.mybatis.provider;
 
 import com.github.mybatis.entity.IdEntity;
+import com.github.mybatis.entity.TrackedEntity;
+import com.github.mybatis.pagination.Page;
+import com.github.mybatis.pagination.dialect.Dialects;
 import com.github.mybatis.util.EntityUtil;
 import com.github.mybatis.util.PersistMeta;
 import org.apache.ibatis.jdbc.SQL;
 
 import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -18,6 +24,12 @@ public class CrudProvider {
   public static final String WHERE_KEY = "where";
   public static final String ORDER_KEY = "order";
   public static final String GROUP_KEY = "groupBy";
+  public static final String LIST_KEY = "list";
+  public static final String DIALECT_KEY = "dialect";
+  public static final String PROJECTION_KEY = "projection";
+  public static final String CURSOR_KEY = "cursor";
+  public static final String POSTFIX_KEY = "postfix";
+  private static final String DEFAULT_DIALECT = "mysql";
 
   /**
    * 查询所有记录
@@ -26,12 +38,41 @@ public class CrudProvider {
    * @return
    */
   public String findAll(final Class<?> clazz) {
-    return new SQL() {
+    StatementCache.Key key = new StatementCache.Key(clazz, "findAll");
+    String sql = StatementCache.get(key);
+    if (sql != null) {
+      return sql;
+    }
+    final PersistMeta meta = EntityUtil.getMeta(clazz);
+    return StatementCache.put(key, new SQL() {
       {
-        SELECT("*");
-        FROM(EntityUtil.getTableName(clazz));
+        SELECT(meta.getSelectColumns());
+        FROM(meta.getTableName());
       }
-    }.toString();
+    }.toString());
+  }
+
+  /**
+   * 查询所有记录，只查询PROJECTION_KEY指定的属性
+   *
+   * @param parameter
+   * @return
+   */
+  public String findAllWith(final Map<String, Object> parameter) {
+    final Class<?> clazz = (Class<?>) parameter.get(CLASS_KEY);
+    final PersistMeta meta = EntityUtil.getMeta(clazz);
+    final long[] mask = projectionMask(meta, parameter);
+    StatementCache.Key key = new StatementCache.Key(clazz, "findAllWith", mask, null);
+    String sql = StatementCache.get(key);
+    if (sql != null) {
+      return sql;
+    }
+    return StatementCache.put(key, new SQL() {
+      {
+        SELECT(selectColumns(meta, mask));
+        FROM(meta.getTableName());
+      }
+    }.toString());
   }
 
   /**
@@ -41,12 +82,17 @@ public class CrudProvider {
    * @return
    */
   public String countAll(final Class<?> clazz) {
-    return new SQL() {
+    StatementCache.Key key = new StatementCache.Key(clazz, "countAll");
+    String sql = StatementCache.get(key);
+    if (sql != null) {
+      return sql;
+    }
+    return StatementCache.put(key, new SQL() {
       {
         SELECT("count(0)");
         FROM(EntityUtil.getTableName(clazz));
       }
-    }.toString();
+    }.toString());
   }
 
   /**
@@ -80,14 +126,43 @@ public class CrudProvider {
    * @return
    */
   public String findById(final Map<String, Object> parameter) {
-    return new SQL() {
+    final Class<?> clazz = (Class<?>) parameter.get(CLASS_KEY);
+    final PersistMeta meta = EntityUtil.getMeta(clazz);
+    final long[] mask = projectionMask(meta, parameter);
+    StatementCache.Key key = new StatementCache.Key(clazz, "findById", mask, null);
+    String sql = StatementCache.get(key);
+    if (sql != null) {
+      return sql;
+    }
+    return StatementCache.put(key, new SQL() {
       {
-        Class<?> clazz = (Class<?>) parameter.get(CLASS_KEY);
-        SELECT("*");
-        FROM(EntityUtil.getTableName(clazz));
+        SELECT(selectColumns(meta, mask));
+        FROM(meta.getTableName());
         WHERE("id=#{" + PARA_KEY + '}');
       }
-    }.toString();
+    }.toString());
+  }
+
+  /**
+   * 根据主键列表查找记录，拆分批次和补齐长度由PaginationAutoMapInterceptor完成
+   *
+   * @param parameter
+   * @return
+   */
+  public String findByIds(final Map<String, Object> parameter) {
+    final Class<?> clazz = (Class<?>) parameter.get(CLASS_KEY);
+    List<?> ids = (List<?>) parameter.get(LIST_KEY);
+    PersistMeta meta = EntityUtil.getMeta(clazz);
+    long[] mask = projectionMask(meta, parameter);
+    StatementCache.Key key = new StatementCache.Key(clazz, "findByIds", mask, null, ids.size());
+    String sql = StatementCache.get(key);
+    if (sql != null) {
+      return sql;
+    }
+    StringBuilder sbd = new StringBuilder(64 + ids.size() * 12);
+    sbd.append("SELECT ").append(selectColumns(meta, mask)).append(" FROM ").append(meta.getTableName()).append(" WHERE id IN ");
+    appendInList(sbd, ids.size());
+    return StatementCache.put(key, sbd.toString());
   }
 
   /**
@@ -99,13 +174,22 @@ public class CrudProvider {
   public String findByPage(final Map<String, Object> parameter) {
     return new SQL() {
       {
-        Class<?> clazz = (Class<?>) parameter.get(CLASS_KEY);
-        SELECT("*");
-        FROM(EntityUtil.getTableName(clazz));
-        if (parameter.containsKey(WHERE_KEY)) {
+        PersistMeta meta = EntityUtil.getMeta((Class<?>) parameter.get(CLASS_KEY));
+        Object page = parameter.containsKey(PAGE_KEY) ? parameter.get(PAGE_KEY) : null;
+        SELECT(selectColumns(meta, projectionMask(meta, parameter)));
+        FROM(getTableName(meta, readPostfix(parameter)));
+        if (parameter.containsKey(WHERE_KEY) && parameter.get(WHERE_KEY) != null) {
           WHERE((String) parameter.get(WHERE_KEY));
         }
-        if (parameter.containsKey(ORDER_KEY)) {
+        if (page instanceof Page && ((Page) page).isKeyset()) {
+          // keyset分页按排序键定位，忽略ORDER_KEY
+          String[] sortKeys = ((Page) page).getSortKeys();
+          Object[] cursor = ((Page) page).getCursor();
+          if (cursor != null) {
+            WHERE(seekCondition(meta, sortKeys, cursor, parameter));
+          }
+          ORDER_BY(seekOrder(meta, sortKeys));
+        } else if (parameter.containsKey(ORDER_KEY) && parameter.get(ORDER_KEY) != null) {
           ORDER_BY((String) parameter.get(ORDER_KEY));
         }
         if (parameter.containsKey(GROUP_KEY)) {
@@ -115,6 +199,110 @@ public class CrudProvider {
     }.toString();
   }
 
+  /**
+   * 按条件统计行数，参数中有POSTFIX_KEY时统计对应的分表
+   *
+   * @param parameter
+   * @return
+   */
+  public String countWhere(final Map<String, Object> parameter) {
+    return new SQL() {
+      {
+        PersistMeta meta = EntityUtil.getMeta((Class<?>) parameter.get(CLASS_KEY));
+        SELECT("count(0)");
+        FROM(getTableName(meta, readPostfix(parameter)));
+        if (parameter.containsKey(WHERE_KEY) && parameter.get(WHERE_KEY) != null) {
+          WHERE((String) parameter.get(WHERE_KEY));
+        }
+      }
+    }.toString();
+  }
+
+  /**
+   * 查询时指定的分表后缀，后缀直接拼接到表名中，只允许字母数字和下划线
+   */
+  private String readPostfix(Map<String, Object> parameter) {
+    Object postfix = parameter.containsKey(POSTFIX_KEY) ? parameter.get(POSTFIX_KEY) : null;
+    if (postfix == null) {
+      return null;
+    }
+    String value = postfix.toString();
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (!(c == '_' || Character.isLetterOrDigit(c))) {
+        throw new IllegalArgumentException("illegal table postfix: " + value);
+      }
+    }
+    return value;
+  }
+
+  /**
+   * keyset分页定位上一页结尾的条件，例如排序键(a, b desc)生成 (`a`>#{cursor0}) OR (`a`=#{cursor0} AND `b`<#{cursor1})，
+   * 所有排序键同向时在前面加上 `a`>=#{cursor0} 以便使用索引的范围扫描。游标取值放入参数中
+   */
+  private String seekCondition(PersistMeta meta, String[] sortKeys, Object[] cursor, Map<String, Object> parameter) {
+    if (cursor.length != sortKeys.length) {
+      throw new IllegalArgumentException("cursor has " + cursor.length + " values for " + sortKeys.length + " sort keys");
+    }
+    String[] columns = new String[sortKeys.length];
+    boolean[] desc = new boolean[sortKeys.length];
+    boolean sameDirection = true;
+    for (int i = 0; i < sortKeys.length; i++) {
+      columns[i] = sortColumn(meta, sortKeys[i]);
+      desc[i] = Page.isDesc(sortKeys[i]);
+      sameDirection &= desc[i] == desc[0];
+      if (cursor[i] == null) {
+        throw new IllegalArgumentException("cursor value of " + sortKeys[i] + " is null");
+      }
+      parameter.put(CURSOR_KEY + i, cursor[i]);
+    }
+
+    StringBuilder sbd = new StringBuilder(64 * sortKeys.length);
+    if (sameDirection && sortKeys.length > 1) {
+      sbd.append('`').append(columns[0]).append('`').append(desc[0] ? "<=" : ">=").append("#{").append(CURSOR_KEY).append("0} AND (");
+    }
+    for (int i = 0; i < sortKeys.length; i++) {
+      if (i != 0) {
+        sbd.append(" OR ");
+      }
+      sbd.append('(');
+      for (int j = 0; j < i; j++) {
+        sbd.append('`').append(columns[j]).append("`=#{").append(CURSOR_KEY).append(j).append("} AND ");
+      }
+      sbd.append('`').append(columns[i]).append('`').append(desc[i] ? '<' : '>').append("#{").append(CURSOR_KEY).append(i).append("})");
+    }
+    if (sameDirection && sortKeys.length > 1) {
+      sbd.append(')');
+    }
+    return sbd.toString();
+  }
+
+  private String seekOrder(PersistMeta meta, String[] sortKeys) {
+    StringBuilder sbd = new StringBuilder(32 * sortKeys.length);
+    for (int i = 0; i < sortKeys.length; i++) {
+      if (i != 0) {
+        sbd.append(", ");
+      }
+      sbd.append('`').append(sortColumn(meta, sortKeys[i])).append('`');
+      if (Page.isDesc(sortKeys[i])) {
+        sbd.append(" DESC");
+      }
+    }
+    return sbd.toString();
+  }
+
+  /**
+   * 排序键对应的列名
+   */
+  private String sortColumn(PersistMeta meta, String sortKey) {
+    String property = Page.sortProperty(sortKey);
+    int pos = meta.indexOf(property);
+    if (pos < 0) {
+      throw new IllegalArgumentException("unknown sort key " + property + " of " + meta.getTableName());
+    }
+    return meta.getColumnNames()[pos];
+  }
+
   /**
    * 按照id查找并删除某个对象
    *
@@ -137,13 +325,38 @@ public class CrudProvider {
    * @return
    */
   public String deleteById(final Map<String, Object> parameter) {
-    return new SQL() {
+    final Class<?> clazz = (Class<?>) parameter.get(CLASS_KEY);
+    StatementCache.Key key = new StatementCache.Key(clazz, "deleteById");
+    String sql = StatementCache.get(key);
+    if (sql != null) {
+      return sql;
+    }
+    return StatementCache.put(key, new SQL() {
       {
-        Class<?> clazz = (Class<?>) parameter.get(CLASS_KEY);
         DELETE_FROM(EntityUtil.getTableName(clazz));
         WHERE("id=#{" + PARA_KEY + '}');
       }
-    }.toString();
+    }.toString());
+  }
+
+  /**
+   * 根据主键列表删除记录
+   *
+   * @param parameter
+   * @return
+   */
+  public String deleteByIds(final Map<String, Object> parameter) {
+    final Class<?> clazz = (Class<?>) parameter.get(CLASS_KEY);
+    List<?> ids = (List<?>) parameter.get(LIST_KEY);
+    StatementCache.Key key = new StatementCache.Key(clazz, "deleteByIds", StatementCache.NO_MASK, null, ids.size());
+    String sql = StatementCache.get(key);
+    if (sql != null) {
+      return sql;
+    }
+    StringBuilder sbd = new StringBuilder(64 + ids.size() * 12);
+    sbd.append("DELETE FROM ").append(EntityUtil.getTableName(clazz)).append(" WHERE id IN ");
+    appendInList(sbd, ids.size());
+    return StatementCache.put(key, sbd.toString());
   }
 
   /**
@@ -155,10 +368,23 @@ public class CrudProvider {
   public String update(Object obj) {
     Class<?> clazz = obj.getClass();
     PersistMeta meta = EntityUtil.getMeta(clazz);
+    long[] mask = obj instanceof TrackedEntity ? dirtyMask(meta, (TrackedEntity) obj) : null;
+    if (mask == null) {
+      mask = EntityUtil.nonNullMask(meta, obj);
+    }
+    String postfix = getPostfix(meta, obj);
+    StatementCache.Key key = new StatementCache.Key(clazz, "update", mask, postfix);
+    String sql = StatementCache.get(key);
+    if (sql != null) {
+      return sql;
+    }
+
+    String[] names = meta.getColumnNames();
+    Field[] fields = meta.getFields();
     StringBuilder setting = new StringBuilder(32);
     int i = 0;
-    for (Map.Entry<String, Field> kv : meta.getColumns().entrySet()) {
-      if (isNull(kv.getValue(), obj)) {
+    for (int pos = 0; pos < names.length; pos++) {
+      if (!isSet(mask, pos)) {
         continue;
       }
 
@@ -166,10 +392,11 @@ public class CrudProvider {
         setting.append(',');
       }
 
-      setting.append('`').append(kv.getKey()).append('`').append("=#{").append(kv.getValue().getName()).append('}');
+      setting.append('`').append(names[pos]).append('`').append("=#{").append(fields[pos].getName()).append('}');
     }
 
-    return new SQL().UPDATE(getTableName(meta, obj)).SET(setting.toString()).WHERE("id=#{id}").toString();
+    String table = getTableName(meta, postfix);
+    return StatementCache.put(key, new SQL().UPDATE(table).SET(setting.toString()).WHERE("id=#{id}").toString());
   }
 
   /**
@@ -179,11 +406,22 @@ public class CrudProvider {
    * @return String
    */
   public String insert(Object obj) {
-    PersistMeta meta = EntityUtil.getMeta(obj.getClass());
+    Class<?> clazz = obj.getClass();
+    PersistMeta meta = EntityUtil.getMeta(clazz);
+    long[] mask = EntityUtil.nonNullMask(meta, obj);
+    String postfix = getPostfix(meta, obj);
+    StatementCache.Key key = new StatementCache.Key(clazz, "insert", mask, postfix);
+    String sql = StatementCache.get(key);
+    if (sql != null) {
+      return sql;
+    }
+
+    String[] columns = meta.getColumnNames();
+    Field[] fields = meta.getFields();
     StringBuilder names = new StringBuilder(), values = new StringBuilder();
     int i = 0;
-    for (Map.Entry<String, Field> kv : meta.getColumns().entrySet()) {
-      if (isNull(kv.getValue(), obj)) {
+    for (int pos = 0; pos < columns.length; pos++) {
+      if (!isSet(mask, pos)) {
         continue;
       }
 
@@ -192,21 +430,271 @@ public class CrudProvider {
         values.append(',');
       }
 
-      names.append('`').append(kv.getKey()).append('`');
-      values.append("#{").append(kv.getValue().getName()).append('}');
+      names.append('`').append(columns[pos]).append('`');
+      values.append("#{").append(fields[pos].getName()).append('}');
+    }
+
+    String table = getTableName(meta, postfix);
+    return StatementCache.put(key, new SQL().INSERT_INTO(table).VALUES(names.toString(), values.toString()).toString());
+  }
+
+  /**
+   * 批量新增操作，生成INSERT INTO t (...) VALUES (...),(...)语句。
+   * 各行的非空列必须相同，拆分批次以及按分表后缀、非空列分组由PaginationAutoMapInterceptor完成
+   *
+   * @param parameter
+   * @return String
+   */
+  public String insertBatch(Map<String, Object> parameter) {
+    List<?> list = (List<?>) parameter.get(LIST_KEY);
+    Object first = list.get(0);
+    Class<?> clazz = first.getClass();
+    PersistMeta meta = EntityUtil.getMeta(clazz);
+    long[] mask = commonMask(meta, list);
+    String postfix = getPostfix(meta, first);
+    StatementCache.Key key = new StatementCache.Key(clazz, "insertBatch", mask, postfix, list.size());
+    String sql = StatementCache.get(key);
+    if (sql != null) {
+      return sql;
+    }
+
+    StringBuilder sbd = new StringBuilder(64 + list.size() * meta.getFields().length * 24);
+    sbd.append("INSERT INTO ").append(getTableName(meta, postfix)).append(" (");
+    appendColumns(sbd, meta, mask);
+    sbd.append(") VALUES ");
+    appendRows(sbd, meta, mask, list.size(), null);
+    return StatementCache.put(key, sbd.toString());
+  }
+
+  /**
+   * 插入或更新单条记录(根据主键判断，mysql还包括唯一索引)，由Dialect.getUpsertSql按方言生成
+   *
+   * @param parameter
+   * @return String
+   */
+  public String upsert(Map<String, Object> parameter) {
+    Object obj = parameter.get(PARA_KEY);
+    Class<?> clazz = obj.getClass();
+    PersistMeta meta = EntityUtil.getMeta(clazz);
+    String dialect = getDialect(parameter);
+    long[] mask = EntityUtil.nonNullMask(meta, obj);
+    String postfix = getPostfix(meta, obj);
+    StatementCache.Key key = new StatementCache.Key(clazz, "upsert", mask, postfix, 1, dialect);
+    String sql = StatementCache.get(key);
+    if (sql != null) {
+      return sql;
+    }
+    return StatementCache.put(key, buildUpsert(meta, getTableName(meta, postfix), mask, dialect, 1, PARA_KEY + '.'));
+  }
+
+  /**
+   * 批量插入或更新，拆分批次的方式和insertBatch相同。
+   * 同一条语句中各行的非空列相同，和upsert一样只更新非空列，空值列保留原来的值
+   *
+   * @param parameter
+   * @return String
+   */
+  public String upsertBatch(Map<String, Object> parameter) {
+    List<?> list = (List<?>) parameter.get(LIST_KEY);
+    Object first = list.get(0);
+    Class<?> clazz = first.getClass();
+    PersistMeta meta = EntityUtil.getMeta(clazz);
+    String dialect = getDialect(parameter);
+    long[] mask = commonMask(meta, list);
+    String postfix = getPostfix(meta, first);
+    StatementCache.Key key = new StatementCache.Key(clazz, "upsertBatch", mask, postfix, list.size(), dialect);
+    String sql = StatementCache.get(key);
+    if (sql != null) {
+      return sql;
+    }
+    return StatementCache.put(key, buildUpsert(meta, getTableName(meta, postfix), mask, dialect, list.size(), null));
+  }
+
+  /**
+   * 按方言生成upsert语句，列为mask中的列，占位符和insertBatch相同
+   */
+  private String buildUpsert(PersistMeta meta, String table, long[] mask, String dialect, int rows, String prefix) {
+    String[] columns = meta.getColumnNames();
+    Field[] fields = meta.getFields();
+    int count = 0;
+    for (int pos = 0; pos < columns.length; pos++) {
+      if (isSet(mask, pos)) {
+        count++;
+      }
+    }
+    String[] names = new String[count];
+    String[][] values = new String[rows][count];
+    for (int pos = 0, i = 0; pos < columns.length; pos++) {
+      if (isSet(mask, pos)) {
+        names[i] = columns[pos];
+        for (int row = 0; row < rows; row++) {
+          values[row][i] = prefix == null
+            ? "#{" + LIST_KEY + '[' + row + "]." + fields[pos].getName() + '}'
+            : "#{" + prefix + fields[pos].getName() + '}';
+        }
+        i++;
+      }
+    }
+    String sql = Dialects.of(dialect).getUpsertSql(table, names, values);
+    if (sql == null) {
+      throw new IllegalStateException("dialect " + dialect + " does not support upsert");
+    }
+    return sql;
+  }
+
+  private static String getDialect(Map<String, Object> parameter) {
+    return parameter.containsKey(DIALECT_KEY) ? (String) parameter.get(DIALECT_KEY) : DEFAULT_DIALECT;
+  }
+
+  private void appendInList(StringBuilder sbd, int size) {
+    sbd.append('(');
+    for (int i = 0; i < size; i++) {
+      if (i != 0) {
+        sbd.append(',');
+      }
+      sbd.append("#{").append(LIST_KEY).append('[').append(i).append("]}");
     }
+    sbd.append(')');
+  }
 
-    return new SQL().INSERT_INTO(getTableName(meta, obj)).VALUES(names.toString(), values.toString()).toString();
+  private void appendColumns(StringBuilder sbd, PersistMeta meta, long[] mask) {
+    String[] columns = meta.getColumnNames();
+    int n = 0;
+    for (int pos = 0; pos < columns.length; pos++) {
+      if (isSet(mask, pos)) {
+        if (n++ != 0) {
+          sbd.append(',');
+        }
+        sbd.append('`').append(columns[pos]).append('`');
+      }
+    }
+  }
+
+  /**
+   * 追加VALUES后面的占位符，prefix为空时按LIST_KEY[行号]访问集合中的对象
+   */
+  private void appendRows(StringBuilder sbd, PersistMeta meta, long[] mask, int rows, String prefix) {
+    Field[] fields = meta.getFields();
+    for (int row = 0; row < rows; row++) {
+      if (row != 0) {
+        sbd.append(',');
+      }
+      sbd.append('(');
+      int n = 0;
+      for (int pos = 0; pos < fields.length; pos++) {
+        if (isSet(mask, pos)) {
+          if (n++ != 0) {
+            sbd.append(',');
+          }
+          sbd.append("#{");
+          if (prefix == null) {
+            sbd.append(LIST_KEY).append('[').append(row).append("].");
+          } else {
+            sbd.append(prefix);
+          }
+          sbd.append(fields[pos].getName()).append('}');
+        }
+      }
+      sbd.append(')');
+    }
   }
 
   private String getTableName(PersistMeta meta, Object obj) {
-    if (meta.getPostfix() != null) {
-      try {
-        return meta.getTableName() + '_' + meta.getPostfix().invoke(obj);
-      } catch (Exception ignored) {
+    return getTableName(meta, getPostfix(meta, obj));
+  }
+
+  private String getTableName(PersistMeta meta, String postfix) {
+    return postfix == null ? meta.getTableName() : meta.getTableName() + '_' + postfix;
+  }
+
+  /**
+   * 获取分表后缀，没有分表策略或者获取失败时返回null
+   */
+  private String getPostfix(PersistMeta meta, Object obj) {
+    return meta.getPostfixValue(obj);
+  }
+
+  /**
+   * 从数据库加载的TrackedEntity只更新修改过的列；没有修改时只写入id，保证语句合法(一般在拦截器中已经跳过)
+   */
+  private long[] dirtyMask(PersistMeta meta, TrackedEntity obj) {
+    long[] mask = EntityUtil.dirtyMask(meta, obj);
+    if (mask == null) {
+      return null;
+    }
+    for (long i : mask) {
+      if (i != 0) {
+        return mask;
+      }
+    }
+    int pos = meta.indexOf("id");
+    mask[pos >>> 6] |= 1L << pos;
+    return mask;
+  }
+
+  /**
+   * 所有行共同的非空列掩码。和insert一样只写入非空列，空值列使用数据库的默认值(upsert时保留原值)，
+   * 所以同一条语句中各行的非空列必须相同，由PaginationAutoMapInterceptor按非空列分组
+   */
+  private long[] commonMask(PersistMeta meta, List<?> list) {
+    long[] mask = EntityUtil.nonNullMask(meta, list.get(0));
+    for (int i = 1, size = list.size(); i < size; i++) {
+      if (!Arrays.equals(mask, EntityUtil.nonNullMask(meta, list.get(i)))) {
+        throw new IllegalArgumentException("rows of " + meta.getTableName() + " have different non-null columns, split them with @SplitBatch");
+      }
+    }
+    return mask;
+  }
+
+  /**
+   * 参数中PROJECTION_KEY指定的属性对应的列掩码，没有指定时返回NO_MASK(查询所有列)
+   */
+  private long[] projectionMask(PersistMeta meta, Map<String, Object> parameter) {
+    Object projection = parameter.containsKey(PROJECTION_KEY) ? parameter.get(PROJECTION_KEY) : null;
+    Collection<?> properties;
+    if (projection instanceof Object[]) {
+      properties = Arrays.asList((Object[]) projection);
+    } else if (projection instanceof Collection) {
+      properties = (Collection<?>) projection;
+    } else {
+      return StatementCache.NO_MASK;
+    }
+    if (properties.isEmpty()) {
+      return StatementCache.NO_MASK;
+    }
+    long[] mask = new long[(meta.getColumnNames().length + 63) >>> 6];
+    for (Object property : properties) {
+      int pos = meta.indexOf(String.valueOf(property));
+      if (pos < 0) {
+        throw new IllegalArgumentException("unknown property " + property + " of " + meta.getTableName());
+      }
+      mask[pos >>> 6] |= 1L << pos;
+    }
+    return mask;
+  }
+
+  /**
+   * 查询的列清单，NO_MASK表示所有列
+   */
+  private String selectColumns(PersistMeta meta, long[] mask) {
+    if (mask.length == 0) {
+      return meta.getSelectColumns();
+    }
+    String[] columns = meta.getColumnNames();
+    StringBuilder sbd = new StringBuilder(mask.length * 64);
+    for (int pos = 0; pos < columns.length; pos++) {
+      if (isSet(mask, pos)) {
+        if (sbd.length() != 0) {
+          sbd.append(',');
+        }
+        sbd.append('`').append(columns[pos]).append('`');
       }
     }
-    return meta.getTableName();
+    return sbd.toString();
+  }
+
+  private static boolean isSet(long[] mask, int pos) {
+    return (mask[pos >>> 6] & (1L << pos)) != 0;
   }
 
   /**
@@ -221,23 +709,4 @@ public class CrudProvider {
     else
       return update(obj);
   }
-
-  /**
-   * 列名判空处理
-   *
-   * @param field
-   * @return boolean
-   */
-  private boolean isNull(Field field, Object obj) {
-    try {
-      if (!field.isAccessible()) {
-        field.setAccessible(true);
-      }
-      return field.get(obj) == null;
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
-
-    return false;
-  }
 }
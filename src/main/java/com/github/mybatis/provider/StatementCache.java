@@ -0,0 +1,108 @@
+package com.github.mybatis.provider;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.Arrays;
+
+/**
+ * 缓存CrudProvider生成的sql语句，避免每次调用都重新拼接
+ *
+ * key由实体类、provider方法、非空列掩码、分表后缀、批量语句的行数以及数据库方言组成
+ */
+public final class StatementCache {
+  static final long[] NO_MASK = new long[0];
+  private static final Cache<Key, String> CACHE = CacheBuilder.newBuilder().maximumSize(10000).recordStats().build();
+
+  private StatementCache() {
+  }
+
+  static String get(Key key) {
+    return CACHE.getIfPresent(key);
+  }
+
+  static String put(Key key, String sql) {
+    String interned = sql.intern();
+    CACHE.put(key, interned);
+    return interned;
+  }
+
+  /**
+   * 命中和未命中的统计信息
+   *
+   * @return
+   */
+  public static CacheStats stats() {
+    return CACHE.stats();
+  }
+
+  public static long getHitCount() {
+    return CACHE.stats().hitCount();
+  }
+
+  public static long getMissCount() {
+    return CACHE.stats().missCount();
+  }
+
+  public static void clear() {
+    CACHE.invalidateAll();
+  }
+
+  static final class Key {
+    private final Class<?> clazz;
+    private final String method;
+    private final long[] mask;
+    private final String postfix;
+    private final int rows;
+    private final String dialect;
+    private final int hash;
+
+    Key(Class<?> clazz, String method) {
+      this(clazz, method, NO_MASK, null, 1);
+    }
+
+    Key(Class<?> clazz, String method, long[] mask, String postfix) {
+      this(clazz, method, mask, postfix, 1);
+    }
+
+    Key(Class<?> clazz, String method, long[] mask, String postfix, int rows) {
+      this(clazz, method, mask, postfix, rows, null);
+    }
+
+    Key(Class<?> clazz, String method, long[] mask, String postfix, int rows, String dialect) {
+      this.clazz = clazz;
+      this.method = method;
+      this.mask = mask;
+      this.postfix = postfix;
+      this.rows = rows;
+      this.dialect = dialect;
+      int h = clazz.hashCode();
+      h = 31 * h + method.hashCode();
+      h = 31 * h + rows;
+      h = 31 * h + (dialect == null ? 0 : dialect.hashCode());
+      h = 31 * h + Arrays.hashCode(mask);
+      h = 31 * h + (postfix == null ? 0 : postfix.hashCode());
+      this.hash = h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) o;
+      return hash == that.hash && rows == that.rows && clazz == that.clazz && method.equals(that.method) && Arrays.equals(mask, that.mask)
+        && (postfix == null ? that.postfix == null : postfix.equals(that.postfix))
+        && (dialect == null ? that.dialect == null : dialect.equals(that.dialect));
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
@@ -6,31 +6,59 @@ import com.github.autoconf.api.IChangeListener;
 import com.github.autoconf.api.IConfig;
 import com.github.autoconf.api.IConfigFactory;
 import com.github.mybatis.util.CloseableUtil;
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.reflect.Reflection;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.jdbc.datasource.AbstractDataSource;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
- * 读取配置文件动态创建DataSource
+ * 读取配置文件动态创建DataSource。
+ * slaveUrl可以用|分隔多个读库，slaveWeight是逗号分隔的对应权重(默认都是1)，每个读库一个连接池，
+ * 读库定期探活(probeIntervalSeconds，默认5秒，0表示不探活)，连续失败probeFailures次(默认2次)后暂时不用。
+ * 配置了maxLagMillis时探活线程同时维护心跳表(heartbeatTable，默认mybatis_heartbeat)，复制延迟超过这个值的读库暂时不用。
+ * pools列出逗号分隔的命名读库，每个名字用name.url和name.weight配置，格式和slaveUrl、slaveWeight相同，供@Route注解的查询使用
  *
  * Created by lirui on 15/1/7.
  */
 public class DynamicDataSource extends AbstractDataSource implements InitializingBean, DisposableBean {
+  /**
+   * 作为读库名字时表示读主库(@ReadFromMaster)
+   */
+  public static final String MASTER_POOL = "master";
   private static final Logger LOG = LoggerFactory.getLogger(DynamicDataSource.class);
+  private static final int DEFAULT_PROBE_INTERVAL_SECONDS = 5;
+  private static final int DEFAULT_PROBE_FAILURES = 2;
+  private static final String DEFAULT_HEARTBEAT_TABLE = "mybatis_heartbeat";
   private IConfigFactory configFactory;
   private String configName;
   private boolean autoCommit = true;
-  private DruidDataSource writer;
-  private DruidDataSource reader;
+  /**
+   * 写库之后这么长时间内，同一个线程上的读也走主库，避免读到还没有复制过去的数据，0表示关闭
+   */
+  private long stickyMillis;
+  private final ThreadLocal<Long> lastWrite = new ThreadLocal<Long>();
+  private volatile DruidDataSource writer;
+  private volatile ReplicaSet replicas;
+  private volatile Map<String, ReplicaSet> pools = ImmutableMap.of();
+  private volatile Heartbeat heartbeat;
+  private ScheduledExecutorService prober;
 
   public String getConfigName() {
     return configName;
@@ -56,6 +84,38 @@ public class DynamicDataSource extends AbstractDataSource implements Initializin
     this.autoCommit = autoCommit;
   }
 
+  public long getStickyMillis() {
+    return stickyMillis;
+  }
+
+  public void setStickyMillis(long stickyMillis) {
+    this.stickyMillis = stickyMillis;
+  }
+
+  /**
+   * LazyConnection拿到和归还写库连接时调用，开始(或者延长)当前线程的读主库时间
+   */
+  void markWrite() {
+    if (stickyMillis > 0) {
+      lastWrite.set(System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * 当前线程最近写过库，读也要走主库
+   */
+  boolean isSticky() {
+    Long last = lastWrite.get();
+    if (last == null) {
+      return false;
+    }
+    if (System.currentTimeMillis() - last < stickyMillis) {
+      return true;
+    }
+    lastWrite.remove();
+    return false;
+  }
+
   @Override
   public Connection getConnection() throws SQLException {
     LazyConnection connection = new LazyConnection(this, autoCommit);
@@ -68,8 +128,55 @@ public class DynamicDataSource extends AbstractDataSource implements Initializin
     return Reflection.newProxy(Connection.class, connection);
   }
 
+  /**
+   * 交给其他线程执行只读查询(例如并行count)的连接。粘滞在调用线程上判断，粘滞期内读主库；
+   * 真正连接时才挑选读库，和普通查询一样计入读库正在使用的连接数
+   *
+   * @param pool 命名读库，MASTER_POOL表示读主库，null表示默认的读库
+   */
+  public Connection getReaderConnection(String pool) throws SQLException {
+    LazyConnection connection = new LazyConnection(this, autoCommit);
+    connection.setRouteReadOnly(Boolean.TRUE);
+    connection.setRoutePool(isSticky() ? MASTER_POOL : pool);
+    return Reflection.newProxy(Connection.class, connection);
+  }
+
+  /**
+   * 读库全部不可用时使用主库
+   */
   protected DruidDataSource determineTargetDataSource(boolean read) {
-    return read ? reader : writer;
+    ReplicaSet.Replica replica = read ? pickReplica() : null;
+    return replica != null ? replica.getDataSource() : writer;
+  }
+
+  /**
+   * 挑选一个读库，LazyConnection通过它统计读库正在使用的连接数
+   *
+   * @return 没有可用的读库或者当前线程刚写过库时返回null
+   */
+  ReplicaSet.Replica pickReplica() {
+    ReplicaSet set = replicas;
+    return set == null || isSticky() ? null : set.pick();
+  }
+
+  /**
+   * 从命名读库中挑选，MASTER_POOL表示读主库；没有配置这个名字时按普通查询挑选读库
+   *
+   * @return 应该使用主库时返回null
+   */
+  ReplicaSet.Replica pickReplica(String pool) {
+    if (MASTER_POOL.equals(pool)) {
+      return null;
+    }
+    ReplicaSet set = pools.get(pool);
+    if (set == null) {
+      return pickReplica();
+    }
+    return isSticky() ? null : set.pick();
+  }
+
+  ReplicaSet getReplicaSet() {
+    return replicas;
   }
 
   @Override
@@ -93,20 +200,35 @@ public class DynamicDataSource extends AbstractDataSource implements Initializin
         if (Strings.isNullOrEmpty(slaveUrl)) {
           slaveUrl = masterUrl;
         }
-        DruidDataSource reader = buildDruidDataSource("slave", slaveUrl, username, password);
-
-        List<DruidDataSource> ds = Lists.newArrayList();
-        if (DynamicDataSource.this.writer != null) {
-          ds.add(DynamicDataSource.this.writer);
-        }
-        if (DynamicDataSource.this.reader != null) {
-          ds.add(DynamicDataSource.this.reader);
+        int probeFailures = parseInt(conf.get("probeFailures"), DEFAULT_PROBE_FAILURES);
+        ReplicaSet replicas = buildReplicaSet("slave", slaveUrl, conf.get("slaveWeight"), probeFailures, username, password);
+        ImmutableMap.Builder<String, ReplicaSet> builder = ImmutableMap.builder();
+        for (String name : Splitter.on(',').trimResults().omitEmptyStrings().split(Strings.nullToEmpty(conf.get("pools")))) {
+          String url = conf.get(name + ".url");
+          if (Strings.isNullOrEmpty(url)) {
+            LOG.error("no url for pool {} in {}", name, conf.getName());
+            continue;
+          }
+          builder.put(name, buildReplicaSet(name, url, conf.get(name + ".weight"), probeFailures, username, password));
         }
+        Map<String, ReplicaSet> pools = builder.build();
+
+        DruidDataSource oldWriter = DynamicDataSource.this.writer;
+        ReplicaSet oldReplicas = DynamicDataSource.this.replicas;
+        Map<String, ReplicaSet> oldPools = DynamicDataSource.this.pools;
+        int maxLagMillis = parseInt(conf.get("maxLagMillis"), 0);
+        String table = conf.get("heartbeatTable");
+        DynamicDataSource.this.heartbeat = maxLagMillis <= 0 ? null
+          : new Heartbeat(Strings.isNullOrEmpty(table) ? DEFAULT_HEARTBEAT_TABLE : table, configName + '@' + hostName(), maxLagMillis);
         DynamicDataSource.this.writer = writer;
-        DynamicDataSource.this.reader = reader;
-        for (DruidDataSource i : ds) {
-          CloseableUtil.closeQuietly(i);
+        DynamicDataSource.this.replicas = replicas;
+        DynamicDataSource.this.pools = pools;
+        CloseableUtil.closeQuietly(oldWriter);
+        CloseableUtil.closeQuietly(oldReplicas);
+        for (ReplicaSet set : oldPools.values()) {
+          CloseableUtil.closeQuietly(set);
         }
+        startProber(parseInt(conf.get("probeIntervalSeconds"), DEFAULT_PROBE_INTERVAL_SECONDS));
       }
     });
 
@@ -124,10 +246,88 @@ public class DynamicDataSource extends AbstractDataSource implements Initializin
 
   @Override
   public void destroy() throws Exception {
+    synchronized (this) {
+      if (prober != null) {
+        prober.shutdownNow();
+        prober = null;
+      }
+    }
     CloseableUtil.closeQuietly(writer);
-    CloseableUtil.closeQuietly(reader);
+    CloseableUtil.closeQuietly(replicas);
+    for (ReplicaSet set : pools.values()) {
+      CloseableUtil.closeQuietly(set);
+    }
     writer = null;
-    reader = null;
+    replicas = null;
+    pools = ImmutableMap.of();
+  }
+
+  private ReplicaSet buildReplicaSet(String name, String urlList, String weightList, int probeFailures, String username, String password) {
+    List<String> urls = Splitter.on('|').trimResults().omitEmptyStrings().splitToList(urlList);
+    List<String> weights = Splitter.on(',').trimResults().splitToList(Strings.nullToEmpty(weightList));
+    List<ReplicaSet.Replica> list = Lists.newArrayList();
+    for (int i = 0; i < urls.size(); i++) {
+      // 只有一个读库时保持原来的连接池名字
+      String key = urls.size() == 1 ? name : name + i;
+      int weight = i < weights.size() ? parseInt(weights.get(i), 1) : 1;
+      list.add(new ReplicaSet.Replica(key, buildDruidDataSource(key, urls.get(i), username, password), weight));
+    }
+    return new ReplicaSet(list, probeFailures);
+  }
+
+  /**
+   * 定时探活当前的读库，配置更新后按新的间隔重新调度
+   */
+  private synchronized void startProber(int intervalSeconds) {
+    if (prober != null) {
+      prober.shutdownNow();
+      prober = null;
+    }
+    if (intervalSeconds <= 0) {
+      return;
+    }
+    final long timeoutMillis = TimeUnit.SECONDS.toMillis(intervalSeconds);
+    prober = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat(configName + "-probe-%d").build());
+    prober.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        ReplicaSet set = replicas;
+        Heartbeat hb = heartbeat;
+        if (set != null) {
+          try {
+            set.probe(timeoutMillis);
+            for (ReplicaSet pool : pools.values()) {
+              pool.probe(timeoutMillis);
+            }
+            if (hb != null && writer != null) {
+              hb.check(writer, set, pools.values(), timeoutMillis);
+            }
+          } catch (RuntimeException e) {
+            LOG.error("probe {} failed", configName, e);
+          }
+        }
+      }
+    }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+  }
+
+  private static String hostName() {
+    try {
+      return InetAddress.getLocalHost().getHostName();
+    } catch (UnknownHostException e) {
+      return "localhost";
+    }
+  }
+
+  private static int parseInt(String value, int def) {
+    if (Strings.isNullOrEmpty(value) || value.trim().isEmpty()) {
+      return def;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      LOG.error("invalid number: {}", value);
+      return def;
+    }
   }
 
   private DruidDataSource buildDruidDataSource(String key, String url, String username, String password) {
@@ -0,0 +1,130 @@
+package com.github.mybatis.spring;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.github.mybatis.util.CloseableUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * 通过心跳表测量读库的复制延迟：每次探活先读各个读库上的心跳时间，再往主库写入新的心跳。
+ * 延迟 = 上一次写入主库的时间 - 读库上的时间，已经追上上一次心跳的读库延迟为0，所以精度是探活间隔。
+ * 每个应用按configName@主机名写一行，同一台机器上的实例共用一行，时间来自同一个时钟
+ */
+class Heartbeat {
+  private static final Logger LOG = LoggerFactory.getLogger(Heartbeat.class);
+  private final String table;
+  private final String id;
+  private final long maxLagMillis;
+  private boolean created;
+  /**
+   * 最近一次写入主库的心跳时间，0表示还没有写过
+   */
+  private volatile long last;
+
+  Heartbeat(String table, String id, long maxLagMillis) {
+    this.table = table;
+    this.id = id;
+    this.maxLagMillis = maxLagMillis;
+  }
+
+  long getLast() {
+    return last;
+  }
+
+  void check(DruidDataSource master, ReplicaSet replicas, long timeoutMillis) {
+    check(master, replicas, Collections.<ReplicaSet>emptyList(), timeoutMillis);
+  }
+
+  /**
+   * 检查可用读库(包括命名读库)的延迟，然后写入新的心跳，由探活线程调用
+   */
+  void check(DruidDataSource master, ReplicaSet replicas, Collection<ReplicaSet> pools, long timeoutMillis) {
+    long written = last;
+    if (written > 0) {
+      checkLag(replicas, written, timeoutMillis);
+      for (ReplicaSet pool : pools) {
+        checkLag(pool, written, timeoutMillis);
+      }
+    }
+    try {
+      last = beat(master, timeoutMillis);
+    } catch (SQLException e) {
+      LOG.error("cannot write heartbeat to {}", table, e);
+    }
+  }
+
+  private void checkLag(ReplicaSet set, long written, long timeoutMillis) {
+    for (ReplicaSet.Replica r : set.getReplicas()) {
+      if (r.isHealthy()) {
+        long ts = read(r.getDataSource(), timeoutMillis);
+        set.markLag(r, ts < 0 ? -1 : Math.max(0, written - ts), maxLagMillis);
+      }
+    }
+  }
+
+  private long beat(DruidDataSource master, long timeoutMillis) throws SQLException {
+    long now = System.currentTimeMillis();
+    Connection conn = null;
+    PreparedStatement ps = null;
+    try {
+      conn = master.getConnection(timeoutMillis);
+      if (!created) {
+        Statement stmt = conn.createStatement();
+        try {
+          stmt.execute("create table if not exists " + table + " (id varchar(128) primary key, ts bigint not null)");
+        } finally {
+          CloseableUtil.closeQuietly(stmt);
+        }
+        created = true;
+      }
+      ps = conn.prepareStatement("update " + table + " set ts = ? where id = ?");
+      ps.setLong(1, now);
+      ps.setString(2, id);
+      if (ps.executeUpdate() == 0) {
+        CloseableUtil.closeQuietly(ps);
+        ps = conn.prepareStatement("insert into " + table + " (id, ts) values (?, ?)");
+        ps.setString(1, id);
+        ps.setLong(2, now);
+        ps.executeUpdate();
+      }
+      if (!conn.getAutoCommit()) {
+        conn.commit();
+      }
+      return now;
+    } finally {
+      CloseableUtil.closeQuietly(ps);
+      CloseableUtil.closeQuietly(conn);
+    }
+  }
+
+  /**
+   * 读库上的心跳时间，还没有复制过来或者读取失败时返回-1
+   */
+  long read(DruidDataSource replica, long timeoutMillis) {
+    Connection conn = null;
+    PreparedStatement ps = null;
+    ResultSet rs = null;
+    try {
+      conn = replica.getConnection(timeoutMillis);
+      ps = conn.prepareStatement("select ts from " + table + " where id = ?");
+      ps.setString(1, id);
+      rs = ps.executeQuery();
+      return rs.next() ? rs.getLong(1) : -1;
+    } catch (SQLException e) {
+      LOG.debug("cannot read heartbeat from {}", replica.getName(), e);
+      return -1;
+    } finally {
+      CloseableUtil.closeQuietly(rs);
+      CloseableUtil.closeQuietly(ps);
+      CloseableUtil.closeQuietly(conn);
+    }
+  }
+}
@@ -23,7 +23,23 @@ public class LazyConnection implements InvocationHandler {
   private Integer transactionIsolation;
   private Boolean autoCommit = true;
   private boolean closed = false;
+  /**
+   * 由MasterSlaveInterceptor在prepare语句前设置，决定第一次使用时连接读库还是写库，为null时读取MasterSlaveInterceptor.isReadOnly()
+   */
+  private Boolean routeReadOnly;
+  /**
+   * 和routeReadOnly一起设置，语句指定的命名读库，DynamicDataSource.MASTER_POOL表示读主库
+   */
+  private String routePool;
   private Connection target;
+  /**
+   * 连接来自哪个读库，关闭时减去读库正在使用的连接数，连接主库时为null
+   */
+  private ReplicaSet.Replica replica;
+  /**
+   * 按写操作路由到了主库，关闭时再记一次写入时间，读写分离的粘滞时间从写完开始算
+   */
+  private boolean writing;
 
   public LazyConnection(DynamicDataSource router, boolean autoCommit) {
     this.router = router;
@@ -116,9 +132,35 @@ public class LazyConnection implements InvocationHandler {
     } catch (Exception e) {
       log.error("[{}] method={}", router.getConfigName(), methodName, e);
       throw new RuntimeException("cannot invoke " + methodName, e);
+    } finally {
+      if (methodName.equals("close")) {
+        if (replica != null) {
+          replica.release();
+          replica = null;
+        }
+        if (writing) {
+          router.markWrite();
+          writing = false;
+        }
+      }
     }
   }
 
+  public void setRouteReadOnly(Boolean routeReadOnly) {
+    this.routeReadOnly = routeReadOnly;
+  }
+
+  public void setRoutePool(String routePool) {
+    this.routePool = routePool;
+  }
+
+  /**
+   * 已经连到了主库(事务中或者写过)，在其他线程上执行的配套查询也要读主库才能看到同样的数据
+   */
+  public boolean isOnMaster() {
+    return target != null && replica == null;
+  }
+
   /**
    * Return whether the proxy currently holds a target Connection.
    */
@@ -131,16 +173,30 @@ public class LazyConnection implements InvocationHandler {
    */
   private Connection getTargetConnection(Method operation) throws SQLException {
     if (this.target == null) {
-      boolean readOnly = MasterSlaveInterceptor.isReadOnly();
+      boolean readOnly = routeReadOnly != null ? routeReadOnly : MasterSlaveInterceptor.isReadOnly();
+      String pool = routeReadOnly != null ? routePool : MasterSlaveInterceptor.getRoutePool();
       // No target Connection held -> fetch one.
       if (log.isDebugEnabled()) {
         log.debug("Connecting to database for operation '" + operation.getName() + "'");
       }
 
       // Fetch physical Connection from DataSource.
-      DruidDataSource ds = router.determineTargetDataSource(readOnly);
+      ReplicaSet.Replica picked = null;
+      if (pool != null) {
+        picked = router.pickReplica(pool);
+      } else if (readOnly) {
+        picked = router.pickReplica();
+      }
+      DruidDataSource ds = picked != null ? picked.getDataSource() : router.determineTargetDataSource(false);
       TraceContext.get().setServerName(router.getConfigName()).setUrl(extractHost(ds.getUrl()));
       this.target = (this.username != null) ? ds.getConnection(this.username, this.password) : ds.getConnection();
+      if (picked != null) {
+        picked.acquire();
+        this.replica = picked;
+      } else if (!readOnly && pool == null) {
+        this.writing = true;
+        router.markWrite();
+      }
 
       // If we still lack default connection properties, check them now.
       //checkDefaultConnectionProperties(this.target);
@@ -17,6 +17,8 @@ package com.github.mybatis.spring;
  */
 
 import com.github.mybatis.entity.IdEntity;
+import com.github.mybatis.interceptor.MasterSlaveInterceptor;
+import com.github.mybatis.interceptor.PaginationAutoMapInterceptor;
 import com.github.trace.TraceContext;
 import com.github.trace.TraceRecorder;
 import com.google.common.collect.ImmutableList;
@@ -24,6 +26,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.reflect.Reflection;
 import org.apache.ibatis.executor.ErrorContext;
+import org.apache.ibatis.plugin.Interceptor;
 import org.apache.ibatis.session.Configuration;
 import org.mybatis.spring.support.SqlSessionDaoSupport;
 import org.slf4j.Logger;
@@ -119,6 +122,17 @@ public class MapperFactoryBean<T> extends SqlSessionDaoSupport implements Factor
         ErrorContext.instance().reset();
       }
     }
+    // 启动时生成所有语句的MapperMeta和读写分离的路由，避免第一次调用时反射和加锁
+    for (Interceptor i : configuration.getInterceptors()) {
+      if (i instanceof PaginationAutoMapInterceptor) {
+        ((PaginationAutoMapInterceptor) i).prepareMapperMeta(configuration);
+        if (((PaginationAutoMapInterceptor) i).isRouting()) {
+          MasterSlaveInterceptor.prepareRoutes(configuration);
+        }
+      } else if (i instanceof MasterSlaveInterceptor) {
+        MasterSlaveInterceptor.prepareRoutes(configuration);
+      }
+    }
   }
 
   /**
@@ -0,0 +1,274 @@
+package com.github.mybatis.spring;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.github.mybatis.util.CloseableUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一组读库，每个读库一个连接池。
+ * 挑选时按权重随机取两个，再选延迟(EWMA)乘以正在使用的连接数、除以权重后更小的那个，整个过程不加锁。
+ * 延迟取探活语句的执行耗时，不受应用持有连接的时间(流式导出、长事务)影响；
+ * 定期探活，连续失败的读库暂时摘掉，探活成功后再加回来；复制延迟超过阈值的读库同样暂时不用。
+ * 全部不可用时返回null由调用方改用主库
+ */
+class ReplicaSet implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(ReplicaSet.class);
+  /**
+   * EWMA每次向新样本靠近1/DECAY
+   */
+  private static final int DECAY = 5;
+  private final Replica[] replicas;
+  private final int failThreshold;
+  /**
+   * 当前可用的读库，探活结果变化时整体替换
+   */
+  private volatile Snapshot snapshot;
+
+  ReplicaSet(List<Replica> replicas, int failThreshold) {
+    this.replicas = replicas.toArray(new Replica[replicas.size()]);
+    this.failThreshold = Math.max(1, failThreshold);
+    this.snapshot = new Snapshot(this.replicas);
+  }
+
+  Replica[] getReplicas() {
+    return replicas;
+  }
+
+  /**
+   * 挑选一个可用的读库
+   *
+   * @return 没有可用的读库时返回null
+   */
+  Replica pick() {
+    Snapshot s = snapshot;
+    Replica[] members = s.members;
+    if (members.length == 0) {
+      return null;
+    }
+    if (members.length == 1) {
+      return members[0];
+    }
+    Random random = ThreadLocalRandom.current();
+    Replica a = s.sample(random);
+    Replica b = s.sample(random);
+    return a.cost() <= b.cost() ? a : b;
+  }
+
+  /**
+   * 对每个读库执行一次探活，由DynamicDataSource的定时任务调用
+   *
+   * @param timeoutMillis 获取连接和执行校验语句的超时时间
+   */
+  void probe(long timeoutMillis) {
+    for (Replica r : replicas) {
+      mark(r, r.check(timeoutMillis));
+    }
+  }
+
+  /**
+   * 记录一次探活结果，连续失败failThreshold次摘掉，成功一次就恢复
+   */
+  synchronized void mark(Replica replica, boolean ok) {
+    boolean changed = false;
+    if (ok) {
+      replica.failures = 0;
+      if (!replica.healthy) {
+        replica.healthy = true;
+        changed = true;
+        LOG.info("replica {} recovered", replica.name);
+      }
+    } else if (++replica.failures >= failThreshold && replica.healthy) {
+      replica.healthy = false;
+      changed = true;
+      LOG.warn("replica {} ejected after {} failed probes", replica.name, replica.failures);
+    }
+    if (changed) {
+      rebuild();
+    }
+  }
+
+  /**
+   * 记录一次复制延迟，超过maxLagMillis时不再使用，回落到阈值以内后恢复
+   *
+   * @param lagMillis 小于0表示测不出来(例如心跳还没有复制过来)，不影响使用
+   */
+  synchronized void markLag(Replica replica, long lagMillis, long maxLagMillis) {
+    replica.lag = lagMillis;
+    boolean lagging = lagMillis > maxLagMillis;
+    if (lagging != replica.lagging) {
+      replica.lagging = lagging;
+      if (lagging) {
+        LOG.warn("replica {} lags {}ms, more than {}ms", replica.name, lagMillis, maxLagMillis);
+      } else {
+        LOG.info("replica {} caught up, lag {}ms", replica.name, lagMillis);
+      }
+      rebuild();
+    }
+  }
+
+  private void rebuild() {
+    List<Replica> members = new ArrayList<>(replicas.length);
+    for (Replica r : replicas) {
+      if (r.healthy && !r.lagging) {
+        members.add(r);
+      }
+    }
+    snapshot = new Snapshot(members.toArray(new Replica[members.size()]));
+  }
+
+  @Override
+  public void close() {
+    for (Replica r : replicas) {
+      CloseableUtil.closeQuietly(r.dataSource);
+    }
+  }
+
+  /**
+   * 可用读库和累计权重，创建后不再修改
+   */
+  private static final class Snapshot {
+    private final Replica[] members;
+    private final int[] cumulative;
+
+    Snapshot(Replica[] members) {
+      this.members = members;
+      this.cumulative = new int[members.length];
+      int sum = 0;
+      for (int i = 0; i < members.length; i++) {
+        sum += members[i].weight;
+        cumulative[i] = sum;
+      }
+    }
+
+    Replica sample(Random random) {
+      int n = random.nextInt(cumulative[cumulative.length - 1]);
+      for (int i = 0; i < cumulative.length; i++) {
+        if (n < cumulative[i]) {
+          return members[i];
+        }
+      }
+      return members[members.length - 1];
+    }
+  }
+
+  /**
+   * 一个读库：连接池、权重和运行时的统计
+   */
+  static final class Replica {
+    private final String name;
+    private final DruidDataSource dataSource;
+    private final int weight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /**
+     * 探活语句执行耗时的EWMA，单位纳秒，0表示还没有样本
+     */
+    private final AtomicLong latency = new AtomicLong();
+    private volatile boolean healthy = true;
+    /**
+     * 最近一次测到的复制延迟，单位毫秒，-1表示未知
+     */
+    private volatile long lag = -1;
+    private volatile boolean lagging;
+    /**
+     * 连续探活失败的次数，只在mark中修改
+     */
+    private int failures;
+
+    Replica(String name, DruidDataSource dataSource, int weight) {
+      this.name = name;
+      this.dataSource = dataSource;
+      this.weight = Math.max(1, weight);
+    }
+
+    String getName() {
+      return name;
+    }
+
+    DruidDataSource getDataSource() {
+      return dataSource;
+    }
+
+    int getWeight() {
+      return weight;
+    }
+
+    int getInFlight() {
+      return inFlight.get();
+    }
+
+    long getLatency() {
+      return latency.get();
+    }
+
+    boolean isHealthy() {
+      return healthy;
+    }
+
+    long getLag() {
+      return lag;
+    }
+
+    boolean isLagging() {
+      return lagging;
+    }
+
+    /**
+     * 越小越优先，还没有延迟样本时只看连接数和权重
+     */
+    double cost() {
+      return (latency.get() + 1.0) * (inFlight.get() + 1) / weight;
+    }
+
+    /**
+     * 取到连接后调用，归还时调用release
+     */
+    void acquire() {
+      inFlight.incrementAndGet();
+    }
+
+    void release() {
+      inFlight.decrementAndGet();
+    }
+
+    void record(long nanos) {
+      while (true) {
+        long old = latency.get();
+        long next = old == 0 ? Math.max(1, nanos) : old + (nanos - old) / DECAY;
+        if (latency.compareAndSet(old, next)) {
+          return;
+        }
+      }
+    }
+
+    boolean check(long timeoutMillis) {
+      Connection conn = null;
+      Statement stmt = null;
+      try {
+        conn = dataSource.getConnection(timeoutMillis);
+        stmt = conn.createStatement();
+        stmt.setQueryTimeout((int) Math.max(1, timeoutMillis / 1000));
+        long start = System.nanoTime();
+        stmt.execute(dataSource.getValidationQuery());
+        record(System.nanoTime() - start);
+        return true;
+      } catch (Exception e) {
+        LOG.warn("probe replica {} failed: {}", name, e.toString());
+        return false;
+      } finally {
+        CloseableUtil.closeQuietly(stmt);
+        CloseableUtil.closeQuietly(conn);
+      }
+    }
+  }
+}
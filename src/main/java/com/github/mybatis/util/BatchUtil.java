@@ -0,0 +1,61 @@
+package com.github.mybatis.util;
+
+import com.github.mybatis.mapper.ICrudMapper;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 基于ExecutorType.BATCH的批量写入，每行一条INSERT，由jdbc的addBatch/executeBatch一次发送。
+ * 适合支持改写批量语句的驱动(如mysql的rewriteBatchedStatements=true)，可以和ICrudMapper.insertBatch对比选择
+ */
+public class BatchUtil {
+  private BatchUtil() {
+  }
+
+  /**
+   * 批量插入记录
+   *
+   * @param factory    SqlSessionFactory
+   * @param mapperType mapper接口
+   * @param rows       待插入的记录
+   * @param flushSize  每积累多少行执行一次executeBatch
+   * @param <T>        实体类型
+   * @return 插入的总行数
+   */
+  public static <T> int insert(SqlSessionFactory factory, Class<? extends ICrudMapper<T>> mapperType, Collection<T> rows, int flushSize) {
+    SqlSession session = factory.openSession(ExecutorType.BATCH, false);
+    try {
+      ICrudMapper<T> mapper = session.getMapper(mapperType);
+      int total = 0, pending = 0;
+      for (T row : rows) {
+        mapper.insert(row);
+        if (++pending >= flushSize) {
+          total += sum(session.flushStatements());
+          pending = 0;
+        }
+      }
+      total += sum(session.flushStatements());
+      session.commit();
+      return total;
+    } finally {
+      CloseableUtil.closeQuietly(session);
+    }
+  }
+
+  private static int sum(List<BatchResult> results) {
+    int total = 0;
+    for (BatchResult result : results) {
+      for (int count : result.getUpdateCounts()) {
+        // SUCCESS_NO_INFO表示执行成功但是行数未知，按1行计算
+        total += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+      }
+    }
+    return total;
+  }
+}
@@ -2,6 +2,8 @@ package com.github.mybatis.util;
 
 import com.github.mybatis.annotation.NameMappingPolicy;
 import com.github.mybatis.annotation.TableSplitPolicy;
+import com.github.mybatis.entity.TrackedEntity;
+import com.google.common.base.Objects;
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
 import org.slf4j.Logger;
@@ -13,6 +15,8 @@ import javax.persistence.Transient;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 
@@ -44,6 +48,99 @@ public final class EntityUtil {
     return meta.get(clz);
   }
 
+  /**
+   * 记录实体当前各列的取值，之后update只写入修改过的列
+   *
+   * @param entity
+   */
+  public static void snapshot(TrackedEntity entity) {
+    Field[] fields = getMeta(entity.getClass()).getFields();
+    Object[] values = new Object[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      values[i] = copyValue(ReflectionUtil.getValue(fields[i], entity));
+    }
+    entity.setSnapshot(values);
+  }
+
+  /**
+   * 和快照相比修改过的列掩码，第i位对应PersistMeta.getColumnNames()[i]
+   *
+   * @param meta
+   * @param entity
+   * @return 没有快照时返回null
+   */
+  public static long[] dirtyMask(PersistMeta meta, TrackedEntity entity) {
+    Object[] snapshot = entity.getSnapshot();
+    if (snapshot == null) {
+      return null;
+    }
+    Field[] fields = meta.getFields();
+    long[] mask = new long[(fields.length + 63) >>> 6];
+    for (int i = 0; i < fields.length; i++) {
+      Object value = ReflectionUtil.getValue(fields[i], entity);
+      if (!valueEquals(snapshot[i], value)) {
+        mask[i >>> 6] |= 1L << i;
+      }
+    }
+    return mask;
+  }
+
+  /**
+   * 非空列的掩码，第i位对应PersistMeta.getColumnNames()[i]
+   *
+   * @param meta
+   * @param entity
+   * @return
+   */
+  public static long[] nonNullMask(PersistMeta meta, Object entity) {
+    Field[] fields = meta.getFields();
+    long[] mask = new long[(fields.length + 63) >>> 6];
+    for (int i = 0; i < fields.length; i++) {
+      if (ReflectionUtil.getValue(fields[i], entity) != null) {
+        mask[i >>> 6] |= 1L << i;
+      }
+    }
+    return mask;
+  }
+
+  /**
+   * 是否有列和快照不同，没有快照时返回true
+   *
+   * @param entity
+   * @return
+   */
+  public static boolean isDirty(TrackedEntity entity) {
+    long[] mask = dirtyMask(getMeta(entity.getClass()), entity);
+    if (mask == null) {
+      return true;
+    }
+    for (long i : mask) {
+      if (i != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Date和数组是可变对象，快照中保存副本
+   */
+  private static Object copyValue(Object value) {
+    if (value instanceof Date) {
+      return ((Date) value).clone();
+    } else if (value instanceof byte[]) {
+      return ((byte[]) value).clone();
+    }
+    return value;
+  }
+
+  private static boolean valueEquals(Object a, Object b) {
+    if (a instanceof byte[] && b instanceof byte[]) {
+      return Arrays.equals((byte[]) a, (byte[]) b);
+    }
+    return Objects.equal(a, b);
+  }
+
   /**
    * 扫描类注解信息
    *
@@ -107,6 +204,7 @@ public final class EntityUtil {
         } else {
           columnName = nameConvert(fieldName, mapCamelCaseToUnderscore);
         }
+        field.setAccessible(true);
         columns.put(columnName, field);
         log.info("{}, fieldName:{}, columnName:{}", clazz.getName(), fieldName, columnName);
       }
@@ -2,6 +2,7 @@ package com.github.mybatis.util;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -19,6 +20,26 @@ public class PersistMeta {
    */
   private Map<String, Field> columns;
 
+  /**
+   * 按固定顺序排列的列名，下标即为列掩码中的位置
+   */
+  private String[] columnNames;
+
+  /**
+   * 与columnNames一一对应的Field，扫描实体时已经设置为可访问
+   */
+  private Field[] fields;
+
+  /**
+   * 属性名到columnNames下标的映射
+   */
+  private Map<String, Integer> propertyIndex;
+
+  /**
+   * 查询时使用的列清单，代替SELECT *
+   */
+  private String selectColumns;
+
   /**
    * 执行某个函数获取表名后缀
    */
@@ -38,6 +59,46 @@ public class PersistMeta {
 
   public void setColumns(Map<String, Field> columns) {
     this.columns = columns;
+    int size = columns.size(), i = 0;
+    this.columnNames = new String[size];
+    this.fields = new Field[size];
+    this.propertyIndex = new HashMap<>(size * 2);
+    StringBuilder sbd = new StringBuilder(size * 16);
+    for (Map.Entry<String, Field> kv : columns.entrySet()) {
+      columnNames[i] = kv.getKey();
+      fields[i] = kv.getValue();
+      fields[i].setAccessible(true);
+      propertyIndex.put(kv.getValue().getName(), i);
+      if (i++ != 0) {
+        sbd.append(',');
+      }
+      sbd.append('`').append(kv.getKey()).append('`');
+    }
+    this.selectColumns = sbd.toString();
+  }
+
+  public String[] getColumnNames() {
+    return columnNames;
+  }
+
+  public Field[] getFields() {
+    return fields;
+  }
+
+
+  public String getSelectColumns() {
+    return selectColumns;
+  }
+
+  /**
+   * 属性对应的列下标，不是数据表列时返回-1
+   *
+   * @param property
+   * @return
+   */
+  public int indexOf(String property) {
+    Integer index = propertyIndex.get(property);
+    return index == null ? -1 : index;
   }
 
   public Method getPostfix() {
@@ -45,6 +106,25 @@ public class PersistMeta {
   }
 
   public void setPostfix(Method postfix) {
+    if (postfix != null) {
+      postfix.setAccessible(true);
+    }
     this.postfix = postfix;
   }
+
+  /**
+   * 获取分表后缀，没有分表策略或者获取失败时返回null
+   *
+   * @param obj
+   * @return
+   */
+  public String getPostfixValue(Object obj) {
+    if (postfix != null) {
+      try {
+        return String.valueOf(postfix.invoke(obj));
+      } catch (ReflectiveOperationException | RuntimeException ignored) {
+      }
+    }
+    return null;
+  }
 }
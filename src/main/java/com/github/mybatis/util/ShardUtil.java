@@ -0,0 +1,288 @@
+package com.github.mybatis.util;
+
+import com.github.mybatis.mapper.IPaginationMapper;
+import com.github.mybatis.pagination.Page;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 跨分表(@TableSplitPolicy)的合并查询：每个分表在独立的SqlSession中并行查询，limit下推到每个分表，
+ * 有排序键时按k路归并合并结果，统计行数时各分表求和
+ */
+public class ShardUtil {
+  private static final int THREADS = Runtime.getRuntime().availableProcessors() * 2;
+  private static volatile ExecutorService executor = newExecutor(THREADS);
+
+  private ShardUtil() {
+  }
+
+  /**
+   * 替换默认的线程池，默认线程数为cpu核数的2倍，队列满时在调用线程中执行
+   *
+   * @param executor
+   */
+  public static void setExecutor(ExecutorService executor) {
+    ShardUtil.executor = executor;
+  }
+
+  /**
+   * 查询多个分表并合并结果
+   *
+   * @param factory     SqlSessionFactory
+   * @param mapperType  mapper接口
+   * @param postfixes   分表后缀
+   * @param whereClause 查询条件，可以为null
+   * @param limit       最多返回的行数，同时下推到每个分表
+   * @param sortKeys    排序键，格式同Page.keyset；为空时按分表顺序拼接结果。null的顺序见SortKeyComparator
+   * @param <T>         实体类型
+   * @return
+   */
+  public static <T> List<T> find(final SqlSessionFactory factory, final Class<? extends IPaginationMapper<T>> mapperType,
+                                 Collection<String> postfixes, final String whereClause, final int limit, final String... sortKeys) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("limit must be positive: " + limit);
+    }
+    // 排序键在查询之前检查，实体类型取不到时等拿到结果再按行的类型检查
+    Class<?> entityClass = getEntityClass(mapperType);
+    SortKeyComparator<T> comparator = sortKeys.length == 0 || entityClass == null ? null : new SortKeyComparator<T>(entityClass, sortKeys);
+    List<Callable<List<T>>> tasks = Lists.newArrayListWithCapacity(postfixes.size());
+    for (final String postfix : postfixes) {
+      tasks.add(new Callable<List<T>>() {
+        @Override
+        public List<T> call() throws Exception {
+          Page<T> page = sortKeys.length > 0 ? Page.<T>keyset(limit, sortKeys) : new Page<T>(1, limit, false);
+          SqlSession session = factory.openSession(true);
+          try {
+            return session.getMapper(mapperType).paginationShard(postfix, page, whereClause, null);
+          } finally {
+            CloseableUtil.closeQuietly(session);
+          }
+        }
+      });
+    }
+    List<List<T>> results = invokeAll(tasks);
+    if (sortKeys.length == 0) {
+      List<T> merged = Lists.newArrayListWithCapacity(limit);
+      for (List<T> i : results) {
+        for (T row : i) {
+          if (merged.size() >= limit) {
+            return merged;
+          }
+          merged.add(row);
+        }
+      }
+      return merged;
+    }
+    if (comparator == null) {
+      for (List<T> i : results) {
+        if (!i.isEmpty()) {
+          comparator = new SortKeyComparator<T>(i.get(0).getClass(), sortKeys);
+          break;
+        }
+      }
+      if (comparator == null) {
+        return Lists.newArrayList();
+      }
+    }
+    return merge(results, comparator, limit);
+  }
+
+  /**
+   * mapper接口的泛型参数，例如TestShardMapper extends ICrudPaginationMapper&lt;TestShard&gt;，取不到时返回null
+   */
+  private static Class<?> getEntityClass(Class<?> mapperType) {
+    for (Type type : mapperType.getGenericInterfaces()) {
+      if (type instanceof ParameterizedType) {
+        Type[] args = ((ParameterizedType) type).getActualTypeArguments();
+        if (args.length == 1 && args[0] instanceof Class) {
+          return (Class<?>) args[0];
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 统计多个分表中满足条件的行数之和
+   *
+   * @param factory     SqlSessionFactory
+   * @param mapperType  mapper接口
+   * @param postfixes   分表后缀
+   * @param whereClause 查询条件，可以为null
+   * @param <T>         实体类型
+   * @return
+   */
+  public static <T> long count(final SqlSessionFactory factory, final Class<? extends IPaginationMapper<T>> mapperType,
+                               Collection<String> postfixes, final String whereClause) {
+    List<Callable<Integer>> tasks = Lists.newArrayListWithCapacity(postfixes.size());
+    for (final String postfix : postfixes) {
+      tasks.add(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          SqlSession session = factory.openSession(true);
+          try {
+            return session.getMapper(mapperType).countShard(postfix, whereClause);
+          } finally {
+            CloseableUtil.closeQuietly(session);
+          }
+        }
+      });
+    }
+    long total = 0;
+    for (Integer i : invokeAll(tasks)) {
+      total += i;
+    }
+    return total;
+  }
+
+  /**
+   * 按天分表的后缀，包含起止日期
+   *
+   * @param from    开始日期
+   * @param to      结束日期
+   * @param pattern 日期格式，例如yyyyMMdd
+   * @return
+   */
+  public static List<String> dailyPostfixes(Date from, Date to, String pattern) {
+    SimpleDateFormat format = new SimpleDateFormat(pattern);
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTime(from);
+    calendar.set(Calendar.HOUR_OF_DAY, 0);
+    calendar.set(Calendar.MINUTE, 0);
+    calendar.set(Calendar.SECOND, 0);
+    calendar.set(Calendar.MILLISECOND, 0);
+    List<String> postfixes = Lists.newArrayList();
+    while (!calendar.getTime().after(to)) {
+      postfixes.add(format.format(calendar.getTime()));
+      calendar.add(Calendar.DAY_OF_MONTH, 1);
+    }
+    return postfixes;
+  }
+
+  /**
+   * k路归并，每个分表的结果已经按排序键有序
+   */
+  static <T> List<T> merge(List<List<T>> sorted, final Comparator<T> comparator, int limit) {
+    PriorityQueue<Cursor<T>> heap = new PriorityQueue<>(Math.max(sorted.size(), 1), new Comparator<Cursor<T>>() {
+      @Override
+      public int compare(Cursor<T> o1, Cursor<T> o2) {
+        return comparator.compare(o1.current, o2.current);
+      }
+    });
+    for (List<T> i : sorted) {
+      if (!i.isEmpty()) {
+        heap.add(new Cursor<>(i.iterator()));
+      }
+    }
+    List<T> merged = Lists.newArrayListWithCapacity(limit);
+    while (merged.size() < limit && !heap.isEmpty()) {
+      Cursor<T> top = heap.poll();
+      merged.add(top.current);
+      if (top.next()) {
+        heap.add(top);
+      }
+    }
+    return merged;
+  }
+
+  private static <V> List<V> invokeAll(List<Callable<V>> tasks) {
+    List<Future<V>> futures = Lists.newArrayListWithCapacity(tasks.size());
+    try {
+      for (Callable<V> task : tasks) {
+        futures.add(executor.submit(task));
+      }
+      List<V> results = Lists.newArrayListWithCapacity(tasks.size());
+      for (Future<V> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } finally {
+      for (Future<V> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  private static ExecutorService newExecutor(int threads) {
+    ThreadFactory factory = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("mybatis-shard-%d").build();
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+      new ArrayBlockingQueue<Runnable>(threads * 16), factory, new ThreadPoolExecutor.CallerRunsPolicy());
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  private static final class Cursor<T> {
+    private final Iterator<T> it;
+    private T current;
+
+    Cursor(Iterator<T> it) {
+      this.it = it;
+      this.current = it.next();
+    }
+
+    boolean next() {
+      if (it.hasNext()) {
+        current = it.next();
+        return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * 按排序键比较实体属性，属性在创建时解析成Field。
+   * null按最小值处理(升序在前，降序在后)，和mysql、h2的ORDER BY一致；
+   * postgresql和oracle默认把null当作最大值，排序键可能为null时归并结果和各分表的顺序不一致，应当只用非空的列排序
+   */
+  static final class SortKeyComparator<T> implements Comparator<T> {
+    private final Field[] fields;
+    private final boolean[] desc;
+
+    SortKeyComparator(Class<?> entityClass, String[] sortKeys) {
+      PersistMeta meta = EntityUtil.getMeta(entityClass);
+      fields = new Field[sortKeys.length];
+      desc = new boolean[sortKeys.length];
+      for (int i = 0; i < sortKeys.length; i++) {
+        String property = Page.sortProperty(sortKeys[i]);
+        int pos = meta.indexOf(property);
+        if (pos < 0) {
+          throw new IllegalArgumentException("unknown sort key " + property + " of " + entityClass.getName());
+        }
+        fields[i] = meta.getFields()[pos];
+        desc[i] = Page.isDesc(sortKeys[i]);
+      }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int compare(T o1, T o2) {
+      for (int i = 0; i < fields.length; i++) {
+        Comparable a = (Comparable) ReflectionUtil.getValue(fields[i], o1);
+        Comparable b = (Comparable) ReflectionUtil.getValue(fields[i], o2);
+        int c = a == null ? (b == null ? 0 : -1) : (b == null ? 1 : a.compareTo(b));
+        if (c != 0) {
+          return desc[i] ? -c : c;
+        }
+      }
+      return 0;
+    }
+  }
+}
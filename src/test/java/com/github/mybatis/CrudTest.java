@@ -1,30 +1,56 @@
 package com.github.mybatis;
 
 import com.github.mybatis.entity.Blog;
+import com.github.mybatis.entity.TestBatch;
 import com.github.mybatis.entity.TestDynamic;
 import com.github.mybatis.entity.TestPage;
+import com.github.mybatis.entity.TestShard;
+import com.github.mybatis.entity.TestTracked;
+import com.github.mybatis.interceptor.CountCache;
+import com.github.mybatis.interceptor.MasterSlaveInterceptor;
+import com.github.mybatis.interceptor.PaginationAutoMapInterceptor;
 import com.github.mybatis.mapper.BlogMapper;
+import com.github.mybatis.mapper.TestBatchMapper;
 import com.github.mybatis.mapper.TestDynamicMapper;
 import com.github.mybatis.mapper.TestPageMapper;
+import com.github.mybatis.mapper.TestShardMapper;
+import com.github.mybatis.mapper.TestTrackedMapper;
+import com.github.mybatis.pagination.CountMode;
 import com.github.mybatis.pagination.Page;
+import com.github.mybatis.util.BatchUtil;
 import com.github.mybatis.util.CloseableUtil;
+import com.github.mybatis.util.ShardUtil;
 import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.io.Files;
+import org.apache.ibatis.exceptions.PersistenceException;
 import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -42,6 +68,41 @@ public class CrudTest {
     initDb();
   }
 
+  private static PaginationAutoMapInterceptor interceptor() {
+    for (Interceptor i : sqlSessionFactory.getConfiguration().getInterceptors()) {
+      if (i instanceof PaginationAutoMapInterceptor) {
+        return (PaginationAutoMapInterceptor) i;
+      }
+    }
+    throw new AssertionError("PaginationAutoMapInterceptor is not configured");
+  }
+
+  /**
+   * 记下拦截器当前的配置，测试结束时把修改过的属性改回来
+   */
+  private static final class Settings {
+    private final PaginationAutoMapInterceptor interceptor;
+    private final Map<PropertyDescriptor, Object> values = Maps.newLinkedHashMap();
+
+    Settings(PaginationAutoMapInterceptor interceptor) throws Exception {
+      this.interceptor = interceptor;
+      for (PropertyDescriptor pd : Introspector.getBeanInfo(PaginationAutoMapInterceptor.class, Object.class).getPropertyDescriptors()) {
+        if (pd.getReadMethod() != null && pd.getWriteMethod() != null) {
+          values.put(pd, pd.getReadMethod().invoke(interceptor));
+        }
+      }
+    }
+
+    void restore() throws Exception {
+      for (Map.Entry<PropertyDescriptor, Object> i : values.entrySet()) {
+        PropertyDescriptor pd = i.getKey();
+        if (!Objects.equal(pd.getReadMethod().invoke(interceptor), i.getValue())) {
+          pd.getWriteMethod().invoke(interceptor, i.getValue());
+        }
+      }
+    }
+  }
+
   private static void initDb() throws IOException, SQLException {
     SqlSession session = null;
     try {
@@ -140,4 +201,635 @@ public class CrudTest {
       CloseableUtil.closeQuietly(session);
     }
   }
+
+  @Test
+  public void testInsertBatch() throws Exception {
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      TestBatchMapper mapper = session.getMapper(TestBatchMapper.class);
+      List<TestBatch> rows = Lists.newArrayList();
+      for (int i = 0; i < 2500; i++) {
+        rows.add(new TestBatch("batch-" + i, i % 3 == 0 ? null : i));
+      }
+      assertEquals(0, mapper.insertBatch(Lists.<TestBatch>newArrayList()));
+      assertEquals(2500, mapper.insertBatch(rows));
+      assertEquals(2500, mapper.countAll());
+      // 空值列不写入，和insert一样使用默认值
+      ResultSet rs = session.getConnection().createStatement().executeQuery("SELECT count(*) FROM test_batch WHERE score = -1");
+      rs.next();
+      assertEquals(834, rs.getInt(1));
+
+      TestBatch one = new TestBatch("batch-id", 1);
+      assertEquals(1, mapper.insertBatchAndGetIds(Lists.newArrayList(one)));
+      assertNotNull(one.getId());
+      assertEquals("batch-id", mapper.findById(one.getId()).getName());
+    } finally {
+      CloseableUtil.closeQuietly(session);
+    }
+
+    List<TestBatch> rows = Lists.newArrayList();
+    for (int i = 0; i < 250; i++) {
+      rows.add(new TestBatch("executor-" + i, i));
+    }
+    assertEquals(250, BatchUtil.insert(sqlSessionFactory, TestBatchMapper.class, rows, 100));
+    session = sqlSessionFactory.openSession();
+    try {
+      TestBatchMapper mapper = session.getMapper(TestBatchMapper.class);
+      assertEquals(250, mapper.deleteAll());
+      session.commit();
+    } finally {
+      CloseableUtil.closeQuietly(session);
+    }
+  }
+
+  @Test
+  public void testUpsert() throws Exception {
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      TestBatchMapper mapper = session.getMapper(TestBatchMapper.class);
+      TestBatch a = new TestBatch("upsert-a", 1);
+      mapper.insertAndGetId(a);
+      a.setScore(10);
+      assertEquals(1, mapper.upsert(a));
+      assertEquals(10, mapper.findById(a.getId()).getScore().intValue());
+
+      TestBatch b = new TestBatch("upsert-b", 2);
+      a.setScore(20);
+      assertEquals(2, mapper.upsertBatch(Lists.newArrayList(a, b)));
+      assertEquals(20, mapper.findById(a.getId()).getScore().intValue());
+      assertEquals(2, mapper.countAll());
+
+      // 各行的空值列不同，空值列保留原来的值，不会被其他行带成NULL
+      TestBatch a2 = new TestBatch("upsert-a2", null);
+      a2.setId(a.getId());
+      TestBatch b2 = new TestBatch(null, 30);
+      for (TestBatch row : mapper.findAll()) {
+        if ("upsert-b".equals(row.getName())) {
+          b2.setId(row.getId());
+        }
+      }
+      assertEquals(2, mapper.upsertBatch(Lists.newArrayList(a2, b2)));
+      TestBatch a3 = mapper.findById(a.getId());
+      assertEquals("upsert-a2", a3.getName());
+      assertEquals(20, a3.getScore().intValue());
+      TestBatch b3 = mapper.findById(b2.getId());
+      assertEquals("upsert-b", b3.getName());
+      assertEquals(30, b3.getScore().intValue());
+    } finally {
+      CloseableUtil.closeQuietly(session);
+    }
+  }
+
+  @Test
+  public void testFindByIds() throws Exception {
+    PaginationAutoMapInterceptor interceptor = interceptor();
+    Settings saved = new Settings(interceptor);
+    interceptor.setMaxInSize(64);
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      TestBatchMapper mapper = session.getMapper(TestBatchMapper.class);
+      List<TestBatch> rows = Lists.newArrayList();
+      for (int i = 0; i < 300; i++) {
+        rows.add(new TestBatch("ids-" + i, i));
+      }
+      mapper.insertBatch(rows);
+      List<Long> ids = Lists.newArrayList();
+      for (TestBatch i : mapper.findAll()) {
+        ids.add(i.getId());
+      }
+      assertEquals(300, ids.size());
+
+      List<Long> query = Lists.reverse(ids.subList(0, 200));
+      query = Lists.newArrayList(query);
+      query.add(-1L);
+      query.add(query.get(0));
+      List<TestBatch> found = mapper.findByIds(query);
+      assertEquals(200, found.size());
+      for (int i = 0; i < found.size(); i++) {
+        assertEquals(query.get(i), found.get(i).getId());
+      }
+      Map<Long, TestBatch> map = mapper.findByIdMap(ids.subList(0, 100));
+      assertEquals(100, map.size());
+      assertEquals("ids-0", map.get(ids.get(0)).getName());
+
+      assertEquals(200, mapper.deleteByIds(ids.subList(100, 300)));
+      assertEquals(100, mapper.countAll());
+      assertTrue(mapper.findByIds(Lists.<Long>newArrayList()).isEmpty());
+    } finally {
+      CloseableUtil.closeQuietly(session);
+      saved.restore();
+    }
+  }
+
+  @Test
+  public void testFindByIdsParallel() throws Exception {
+    PaginationAutoMapInterceptor interceptor = interceptor();
+    Settings saved = new Settings(interceptor);
+    List<TestBatch> rows = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      rows.add(new TestBatch("parallel-" + i, i));
+    }
+    // 并行查询使用独立的连接，只能看到已提交的数据
+    assertEquals(100, BatchUtil.insert(sqlSessionFactory, TestBatchMapper.class, rows, 100));
+    interceptor.setMaxInSize(16);
+    interceptor.setChunkThreads(4);
+    SqlSession session = sqlSessionFactory.openSession(true);
+    try {
+      TestBatchMapper mapper = session.getMapper(TestBatchMapper.class);
+      List<Long> ids = Lists.newArrayList();
+      for (TestBatch i : mapper.findAll()) {
+        ids.add(i.getId());
+      }
+      List<Long> query = Lists.newArrayList(Lists.reverse(ids));
+      List<TestBatch> found = mapper.findByIds(query);
+      assertEquals(100, found.size());
+      for (int i = 0; i < found.size(); i++) {
+        assertEquals(query.get(i), found.get(i).getId());
+      }
+      assertEquals(100, mapper.deleteByIds(ids));
+    } finally {
+      CloseableUtil.closeQuietly(session);
+    }
+
+    // 事务中在当前连接上逐批查询，能看到还没有提交的数据
+    session = sqlSessionFactory.openSession();
+    try {
+      TestBatchMapper mapper = session.getMapper(TestBatchMapper.class);
+      mapper.insertBatch(rows.subList(0, 40));
+      List<Long> ids = Lists.newArrayList();
+      for (TestBatch i : mapper.findAll()) {
+        ids.add(i.getId());
+      }
+      assertEquals(40, ids.size());
+      assertEquals(40, mapper.findByIds(ids).size());
+      session.rollback();
+    } finally {
+      CloseableUtil.closeQuietly(session);
+      saved.restore();
+    }
+  }
+
+  @Test
+  public void testProjection() throws Exception {
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      TestBatchMapper mapper = session.getMapper(TestBatchMapper.class);
+      mapper.insertBatch(Lists.newArrayList(new TestBatch("projection-a", 1), new TestBatch("projection-b", 2)));
+
+      List<TestBatch> all = mapper.findAllWith("name");
+      assertEquals(2, all.size());
+      assertEquals("projection-a", all.get(0).getName());
+      assertNull(all.get(0).getId());
+      assertNull(all.get(0).getScore());
+      assertNotNull(mapper.findAll().get(0).getScore());
+
+      Page<TestBatch> page = mapper.paginationWith(new Page<TestBatch>(1, 10), "score>1", "id", "id", "score");
+      assertEquals(1, page.size());
+      assertEquals(2, page.get(0).getScore().intValue());
+      assertNull(page.get(0).getName());
+
+      Page<TestBatch> names = mapper.findNames(new Page<TestBatch>(1, 10));
+      assertEquals(2, names.size());
+      assertNotNull(names.get(1).getId());
+      assertEquals("projection-b", names.get(1).getName());
+      assertNull(names.get(1).getScore());
+    } finally {
+      CloseableUtil.closeQuietly(session);
+    }
+  }
+
+  @Test
+  public void testKeysetPagination() throws Exception {
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      TestBatchMapper mapper = session.getMapper(TestBatchMapper.class);
+      List<TestBatch> rows = Lists.newArrayList();
+      for (int i = 0; i < 25; i++) {
+        rows.add(new TestBatch("keyset-" + i, i % 3));
+      }
+      mapper.insertBatch(rows);
+      List<TestBatch> all = mapper.findAll();
+
+      List<Long> ids = Lists.newArrayList();
+      Page<TestBatch> page = Page.keyset(10, "id");
+      int pages = 0;
+      while (page != null) {
+        mapper.pagination(page);
+        for (TestBatch i : page) {
+          ids.add(i.getId());
+        }
+        pages++;
+        page = page.next();
+      }
+      assertEquals(3, pages);
+      assertEquals(25, ids.size());
+      for (int i = 0; i < ids.size(); i++) {
+        assertEquals(all.get(i).getId(), ids.get(i));
+      }
+
+      // 组合排序键，方向不同，同时带过滤条件
+      List<TestBatch> seen = Lists.newArrayList();
+      page = Page.keyset(4, "score desc", "id");
+      while (page != null) {
+        mapper.pagination2(page, "score < 2");
+        seen.addAll(page);
+        page = page.next();
+      }
+      assertEquals(17, seen.size());
+      for (int i = 1; i < seen.size(); i++) {
+        TestBatch prev = seen.get(i - 1), cur = seen.get(i);
+        assertTrue(prev.getScore() > cur.getScore() || (prev.getScore().equals(cur.getScore()) && prev.getId() < cur.getId()));
+      }
+
+      Page<TestBatch> desc = Page.keyset(25, "id desc");
+      mapper.pagination(desc);
+      assertEquals(25, desc.size());
+      assertEquals(all.get(24).getId(), desc.get(0).getId());
+      Page<TestBatch> after = desc.next();
+      mapper.pagination(after);
+      assertTrue(after.isEmpty());
+      assertNull(after.next());
+    } finally {
+      CloseableUtil.closeQuietly(session);
+    }
+  }
+
+  @Test
+  public void testStreaming() throws Exception {
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      TestBatchMapper mapper = session.getMapper(TestBatchMapper.class);
+      List<TestBatch> rows = Lists.newArrayList();
+      for (int i = 0; i < 50; i++) {
+        rows.add(new TestBatch("stream-" + i, i));
+      }
+      mapper.insertBatch(rows);
+
+      final List<TestBatch> all = Lists.newArrayList();
+      mapper.streamAll(new ResultHandler() {
+        @Override
+        public void handleResult(ResultContext context) {
+          all.add((TestBatch) context.getResultObject());
+        }
+      });
+      assertEquals(50, all.size());
+      assertEquals("stream-0", all.get(0).getName());
+      String id = TestBatchMapper.class.getName() + ".streamAll";
+      assertEquals(1000, sqlSessionFactory.getConfiguration().getMappedStatement(id).getFetchSize().intValue());
+
+      final int[] count = new int[1];
+      mapper.streamWhere("score >= 40", "id desc", new ResultHandler() {
+        @Override
+        public void handleResult(ResultContext context) {
+          assertEquals(49 - count[0]++, ((TestBatch) context.getResultObject()).getScore().intValue());
+        }
+      });
+      assertEquals(10, count[0]);
+    } finally {
+      CloseableUtil.closeQuietly(session);
+    }
+  }
+
+  @Test
+  public void testShardQuery() throws Exception {
+    SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
+    List<String> postfixes = ShardUtil.dailyPostfixes(format.parse("20260101"), format.parse("20260103"), "yyyyMMdd");
+    assertEquals(Lists.newArrayList("20260101", "20260102", "20260103"), postfixes);
+
+    // 分表查询使用独立的连接，只能看到已提交的数据
+    SqlSession session = sqlSessionFactory.openSession();
+    List<TestShard> rows = Lists.newArrayList();
+    try {
+      TestShardMapper mapper = session.getMapper(TestShardMapper.class);
+      for (int day = 0; day < postfixes.size(); day++) {
+        String postfix = postfixes.get(day);
+        for (int i = 0; i < 20; i++) {
+          TestShard row = new TestShard(postfix + "-" + i, (i * 7 + day) % 13, format.parse(postfix));
+          mapper.insertAndGetId(row);
+          rows.add(row);
+        }
+      }
+      session.commit();
+
+      List<TestShard> top = ShardUtil.find(sqlSessionFactory, TestShardMapper.class, postfixes, "score > 2", 15, "score desc", "name");
+      List<TestShard> expected = Lists.newArrayList();
+      for (TestShard i : rows) {
+        if (i.getScore() > 2) {
+          expected.add(i);
+        }
+      }
+      Collections.sort(expected, new Comparator<TestShard>() {
+        @Override
+        public int compare(TestShard o1, TestShard o2) {
+          int c = o2.getScore().compareTo(o1.getScore());
+          return c != 0 ? c : o1.getName().compareTo(o2.getName());
+        }
+      });
+      assertEquals(15, top.size());
+      for (int i = 0; i < top.size(); i++) {
+        assertEquals(expected.get(i).getName(), top.get(i).getName());
+      }
+
+      assertEquals(expected.size(), ShardUtil.count(sqlSessionFactory, TestShardMapper.class, postfixes, "score > 2"));
+      assertEquals(60, ShardUtil.count(sqlSessionFactory, TestShardMapper.class, postfixes, null));
+      assertEquals(10, ShardUtil.find(sqlSessionFactory, TestShardMapper.class, postfixes, null, 10).size());
+      try {
+        ShardUtil.find(sqlSessionFactory, TestShardMapper.class, postfixes, null, 10, "rank desc");
+        fail("unknown sort key");
+      } catch (IllegalArgumentException e) {
+        assertTrue(e.getMessage().contains("rank"));
+      }
+    } finally {
+      for (String postfix : postfixes) {
+        session.getConnection().createStatement().executeUpdate("DELETE FROM test_shard_" + postfix);
+      }
+      session.commit(true);
+      CloseableUtil.closeQuietly(session);
+    }
+  }
+
+  @Test
+  public void testDirtyUpdate() throws Exception {
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      TestBatch row = new TestBatch("tracked", 1);
+      session.getMapper(TestBatchMapper.class).insertAndGetId(row);
+
+      TestTrackedMapper mapper = session.getMapper(TestTrackedMapper.class);
+      TestTracked tracked = mapper.findById(row.getId());
+      assertTrue(tracked.isTracked());
+      // 没有修改时不执行update
+      assertEquals(0, mapper.update(tracked));
+
+      // 其他地方修改了score，只修改name时不会覆盖score
+      session.getConnection().createStatement().executeUpdate("UPDATE test_batch SET score=99 WHERE id=" + row.getId());
+      tracked.setName("tracked-2");
+      assertEquals(1, mapper.update(tracked));
+      TestTracked loaded = mapper.findById(row.getId());
+      assertEquals("tracked-2", loaded.getName());
+      assertEquals(99, loaded.getScore().intValue());
+      assertEquals(0, mapper.update(tracked));
+
+      // 改成null也会写入
+      loaded.setScore(null);
+      assertEquals(1, mapper.update(loaded));
+      assertNull(mapper.findById(row.getId()).getScore());
+    } finally {
+      CloseableUtil.closeQuietly(session);
+    }
+  }
+
+  @Test
+  public void testCountCache() throws Exception {
+    PaginationAutoMapInterceptor interceptor = interceptor();
+    Settings saved = new Settings(interceptor);
+    interceptor.setCountCacheSeconds(60);
+    CountCache cache = interceptor.getCountCache();
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      TestBatchMapper mapper = session.getMapper(TestBatchMapper.class);
+      List<TestBatch> rows = Lists.newArrayList();
+      for (int i = 0; i < 30; i++) {
+        rows.add(new TestBatch("count-" + i, i % 2));
+      }
+      mapper.insertBatch(rows);
+
+      Page<TestBatch> page1 = new Page<>(1, 10, true);
+      mapper.pagination2(page1, "score = 1");
+      assertEquals(15, page1.getTotalNum());
+      assertFalse(page1.isCountFromCache());
+      assertEquals(1, cache.getMissCount());
+
+      Page<TestBatch> page2 = new Page<>(2, 10, true);
+      mapper.pagination2(page2, "score = 1");
+      assertEquals(15, page2.getTotalNum());
+      assertTrue(page2.isCountFromCache());
+      assertEquals(1, cache.getHitCount());
+
+      // 条件不同不会命中
+      Page<TestBatch> other = new Page<>(1, 10, true);
+      mapper.pagination2(other, "score = 0");
+      assertFalse(other.isCountFromCache());
+
+      // 写入后缓存失效
+      mapper.insert(new TestBatch("count-new", 1));
+      Page<TestBatch> page3 = new Page<>(2, 10, true);
+      mapper.pagination2(page3, "score = 1");
+      assertFalse(page3.isCountFromCache());
+      assertEquals(16, page3.getTotalNum());
+    } finally {
+      CloseableUtil.closeQuietly(session);
+      saved.restore();
+    }
+  }
+
+  @Test
+  public void testCountStrategyFallback() throws Exception {
+    PaginationAutoMapInterceptor interceptor = interceptor();
+    Settings saved = new Settings(interceptor);
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      TestBatchMapper mapper = session.getMapper(TestBatchMapper.class);
+      List<TestBatch> rows = Lists.newArrayList();
+      for (int i = 0; i < 12; i++) {
+        rows.add(new TestBatch("strategy-" + i, 7));
+      }
+      mapper.insertBatch(rows);
+      // h2既不支持FOUND_ROWS也没有窗口函数，退回到单独的count语句
+      for (String strategy : new String[]{PaginationAutoMapInterceptor.COUNT_STRATEGY_FOUND_ROWS, PaginationAutoMapInterceptor.COUNT_STRATEGY_WINDOW}) {
+        interceptor.setCountStrategy(strategy);
+        Page<TestBatch> page = new Page<>(2, 5, true);
+        mapper.pagination2(page, "score = 7");
+        assertEquals(12, page.getTotalNum());
+        assertEquals(5, page.size());
+      }
+    } finally {
+      CloseableUtil.closeQuietly(session);
+      saved.restore();
+    }
+  }
+
+  @Test
+  public void testGroupByCount() throws Exception {
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      TestBatchMapper mapper = session.getMapper(TestBatchMapper.class);
+      List<TestBatch> rows = Lists.newArrayList();
+      for (int i = 0; i < 9; i++) {
+        rows.add(new TestBatch("group-" + i, 100 + i % 3));
+      }
+      mapper.insertBatch(rows);
+      // 分组后再统计行数，order by不影响总行数
+      Page<TestBatch> page = new Page<>(1, 2, true);
+      mapper.pagination4(page, "score >= 100", "score desc", "id, name, score");
+      assertEquals(9, page.getTotalNum());
+      assertEquals(2, page.size());
+    } finally {
+      CloseableUtil.closeQuietly(session);
+    }
+  }
+
+  @Test
+  public void testConcurrentCount() throws Exception {
+    PaginationAutoMapInterceptor interceptor = interceptor();
+    Settings saved = new Settings(interceptor);
+    List<TestBatch> rows = Lists.newArrayList();
+    for (int i = 0; i < 12; i++) {
+      rows.add(new TestBatch("concurrent-" + i, 201));
+    }
+    assertEquals(12, BatchUtil.insert(sqlSessionFactory, TestBatchMapper.class, rows, 100));
+    interceptor.setCountThreads(2);
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      TestBatchMapper mapper = session.getMapper(TestBatchMapper.class);
+      mapper.insert(new TestBatch("concurrent-uncommitted", 201));
+      Page<TestBatch> page = new Page<>(1, 20, true);
+      mapper.pagination2(page, "score = 201");
+      // count在独立的连接上执行，看不到当前事务中没有提交的数据
+      assertEquals(13, page.size());
+      assertEquals(12, page.getTotalNum());
+      assertFalse(page.isTotalUnknown());
+      session.rollback();
+      List<Long> ids = Lists.newArrayList();
+      for (TestBatch i : page) {
+        ids.add(i.getId());
+      }
+      assertEquals(12, mapper.deleteByIds(ids));
+      session.commit();
+    } finally {
+      CloseableUtil.closeQuietly(session);
+      saved.restore();
+    }
+  }
+
+  @Test
+  public void testPaginationKeepsLiteralCase() throws Exception {
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      TestBatchMapper mapper = session.getMapper(TestBatchMapper.class);
+      mapper.insert(new TestBatch("Mixed-Case", 301));
+      // 分页时执行原始sql，不能把字符串常量改成小写
+      Page<TestBatch> page = new Page<>(1, 10, true);
+      mapper.pagination2(page, "name = 'Mixed-Case'");
+      assertEquals(1, page.size());
+      assertEquals(1, page.getTotalNum());
+    } finally {
+      CloseableUtil.closeQuietly(session);
+    }
+  }
+
+  @Test
+  public void testEstimatedCount() throws Exception {
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      TestBatchMapper mapper = session.getMapper(TestBatchMapper.class);
+      List<TestBatch> rows = Lists.newArrayList();
+      for (int i = 0; i < 20; i++) {
+        rows.add(new TestBatch("estimate-" + i, 401));
+      }
+      mapper.insertBatch(rows);
+      // 没有过滤条件时读取h2的ROW_COUNT_ESTIMATE
+      long estimate = mapper.estimateAll();
+      assertTrue(estimate >= 20);
+      Page<TestBatch> page = new Page<>(1, 5, true);
+      page.setCountMode(CountMode.ESTIMATED);
+      mapper.pagination(page);
+      assertTrue(page.isTotalEstimated());
+      assertEquals(estimate, page.getTotalNum());
+
+      // h2的执行计划没有估算的行数，退回到精确的count
+      page = new Page<>(1, 5, true);
+      page.setCountMode(CountMode.ESTIMATED);
+      mapper.pagination2(page, "score = 401");
+      assertFalse(page.isTotalEstimated());
+      assertEquals(20, page.getTotalNum());
+
+      // 在超时时间内完成的精确count
+      page = new Page<>(1, 5, true);
+      page.setCountTimeout(5);
+      mapper.pagination2(page, "score = 401");
+      assertFalse(page.isTotalEstimated());
+      assertEquals(20, page.getTotalNum());
+    } finally {
+      CloseableUtil.closeQuietly(session);
+    }
+  }
+
+  @Test
+  public void testDeferredJoin() throws Exception {
+    PaginationAutoMapInterceptor interceptor = interceptor();
+    Settings saved = new Settings(interceptor);
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      TestBatchMapper mapper = session.getMapper(TestBatchMapper.class);
+      List<TestBatch> rows = Lists.newArrayList();
+      for (int i = 0; i < 30; i++) {
+        rows.add(new TestBatch("deferred-" + i, 501));
+      }
+      mapper.insertBatch(rows);
+      Page<TestBatch> expected = new Page<>(3, 5, true);
+      mapper.pagination3(expected, "score = 501", "id desc");
+      interceptor.setDeferredJoinOffset(10);
+      Page<TestBatch> page = new Page<>(3, 5, true);
+      mapper.pagination3(page, "score = 501", "id desc");
+      assertEquals(30, page.getTotalNum());
+      assertEquals(5, page.size());
+      for (int i = 0; i < page.size(); i++) {
+        assertEquals(expected.get(i).getId(), page.get(i).getId());
+        assertEquals(expected.get(i).getName(), page.get(i).getName());
+      }
+      // offset小于阈值时不改写
+      page = new Page<>(1, 5, true);
+      mapper.pagination3(page, "score = 501", "id desc");
+      assertEquals("deferred-29", page.get(0).getName());
+    } finally {
+      CloseableUtil.closeQuietly(session);
+      saved.restore();
+    }
+  }
+
+  @Test
+  public void testFailedPageDoesNotLeak() throws Exception {
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      TestBatchMapper mapper = session.getMapper(TestBatchMapper.class);
+      mapper.insert(new TestBatch("leak", 601));
+      Page<TestBatch> page = new Page<>(1, 10, false);
+      try {
+        mapper.pagination2(page, "no_such_column = 1");
+        fail("should fail");
+      } catch (PersistenceException expected) {
+      }
+      // 分页对象随语句的BoundSql丢弃，不会被同一线程上的下一条查询拿到
+      List<TestBatch> rows = mapper.findAll();
+      assertFalse(rows instanceof Page);
+      assertTrue(page.isEmpty());
+    } finally {
+      CloseableUtil.closeQuietly(session);
+    }
+  }
+
+  @Test
+  public void testFusedRouting() throws Exception {
+    PaginationAutoMapInterceptor interceptor = interceptor();
+    Settings saved = new Settings(interceptor);
+    interceptor.setRouting(true);
+    SqlSession session = sqlSessionFactory.openSession(true);
+    try {
+      TestBatchMapper mapper = session.getMapper(TestBatchMapper.class);
+      TestBatch row = new TestBatch("routing", 701);
+      mapper.insertAndGetId(row);
+      assertEquals("routing", mapper.findById(row.getId()).getName());
+      Page<TestBatch> page = new Page<>(1, 10, true);
+      mapper.pagination3(page, "score = 701", "id");
+      assertEquals(1, page.getTotalNum());
+      assertEquals(row.getId(), page.get(0).getId());
+      // 语句执行完以后不会留在当前线程上
+      assertFalse(MasterSlaveInterceptor.isReadOnly());
+      assertEquals(1, mapper.deleteById(row.getId()));
+    } finally {
+      CloseableUtil.closeQuietly(session);
+      saved.restore();
+    }
+  }
 }
@@ -0,0 +1,89 @@
+package com.github.mybatis.benchmark;
+
+import com.github.mybatis.entity.IdEntity;
+import com.github.mybatis.provider.CrudProvider;
+import com.github.mybatis.util.EntityUtil;
+import com.github.mybatis.util.ReflectionUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.persistence.Table;
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比原来每次检查可访问性的Field.get和扫描时设置好可访问性的ReflectionUtil.getValue读取宽表实体(64列)，
+ * 以及CrudProvider.insert的整体耗时
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AccessorBenchmark {
+  private final CrudProvider provider = new CrudProvider();
+  private final WideEntity entity = new WideEntity();
+  private Field[] fields;
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(AccessorBenchmark.class.getSimpleName()).build()).run();
+  }
+
+  @Setup
+  public void setup() throws Exception {
+    fields = EntityUtil.getMeta(WideEntity.class).getFields();
+    // 一半的列非空
+    for (int i = 0; i < fields.length; i += 2) {
+      if (fields[i].getType() == String.class) {
+        fields[i].set(entity, "value-" + i);
+      }
+    }
+  }
+
+  /**
+   * 原来isNull的做法：每次检查isAccessible然后Field.get
+   */
+  @Benchmark
+  public long reflection() throws Exception {
+    long mask = 0;
+    for (int i = 0; i < fields.length; i++) {
+      Field field = fields[i];
+      if (!field.isAccessible()) {
+        field.setAccessible(true);
+      }
+      if (field.get(entity) != null) {
+        mask |= 1L << i;
+      }
+    }
+    return mask;
+  }
+
+  /**
+   * 现在的做法：扫描时设置好可访问性，ReflectionUtil.getValue读取
+   */
+  @Benchmark
+  public long getValue() {
+    long mask = 0;
+    for (int i = 0; i < fields.length; i++) {
+      if (ReflectionUtil.getValue(fields[i], entity) != null) {
+        mask |= 1L << i;
+      }
+    }
+    return mask;
+  }
+
+  @Benchmark
+  public String providerInsert() {
+    return provider.insert(entity);
+  }
+
+  @Table(name = "wide_entity")
+  public static class WideEntity extends IdEntity {
+    private String c00, c01, c02, c03, c04, c05, c06, c07, c08, c09, c10, c11, c12, c13, c14, c15;
+    private String c16, c17, c18, c19, c20, c21, c22, c23, c24, c25, c26, c27, c28, c29, c30, c31;
+    private String c32, c33, c34, c35, c36, c37, c38, c39, c40, c41, c42, c43, c44, c45, c46, c47;
+    private String c48, c49, c50, c51, c52, c53, c54, c55, c56, c57, c58, c59, c60, c61, c62;
+  }
+}
@@ -0,0 +1,39 @@
+package com.github.mybatis.benchmark;
+
+import com.github.mybatis.util.CloseableUtil;
+import com.google.common.base.Joiner;
+import com.google.common.io.Files;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.sql.PreparedStatement;
+import java.util.List;
+
+/**
+ * benchmark公用的数据库初始化，和CrudTest一样使用h2内存库
+ */
+final class BenchmarkSupport {
+  private BenchmarkSupport() {
+  }
+
+  static SqlSessionFactory sqlSessionFactory() throws Exception {
+    InputStream inputStream = Resources.getResourceAsStream("mybatis/mybatis-config.xml");
+    SqlSessionFactory factory = new SqlSessionFactoryBuilder().build(inputStream);
+    SqlSession session = null;
+    try {
+      session = factory.openSession(true);
+      File f = Resources.getResourceAsFile("database/h2.sql");
+      List<String> lines = Files.readLines(f, Charset.defaultCharset());
+      PreparedStatement statement = session.getConnection().prepareStatement(Joiner.on('\n').join(lines));
+      statement.executeUpdate();
+    } finally {
+      CloseableUtil.closeQuietly(session);
+    }
+    return factory;
+  }
+}
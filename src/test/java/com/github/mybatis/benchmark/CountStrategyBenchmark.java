@@ -0,0 +1,143 @@
+package com.github.mybatis.benchmark;
+
+import com.github.mybatis.util.CloseableUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比分页时获取总行数的几种方式：
+ * count(分页语句+单独的count语句)、foundRows(SQL_CALC_FOUND_ROWS+FOUND_ROWS())、window(COUNT(*) OVER())，
+ * pageOnly只执行分页语句，作为一次往返的下限。
+ *
+ * 默认使用h2内存库，只能运行count和pageOnly；mysql可以通过系统属性指定：
+ * -Dbenchmark.url=jdbc:mysql://host/db -Dbenchmark.user=... -Dbenchmark.password=... 并加上 -p strategy=count,foundRows,window,pageOnly
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CountStrategyBenchmark {
+  private static final String WHERE = " from count_bench where score < ? order by id";
+  @Param({"count", "pageOnly"})
+  private String strategy;
+  @Param({"100000"})
+  private int rows;
+  @Param({"1000"})
+  private int offset;
+  private Connection conn;
+  /**
+   * 每次调用换一个查询条件，避免h2直接复用上一次的查询结果
+   */
+  private int round;
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(CountStrategyBenchmark.class.getSimpleName()).build()).run();
+  }
+
+  @Setup
+  public void setup() throws Exception {
+    conn = DriverManager.getConnection(System.getProperty("benchmark.url", "jdbc:h2:mem:count_bench"),
+      System.getProperty("benchmark.user", "sa"), System.getProperty("benchmark.password", ""));
+    Statement stmt = conn.createStatement();
+    try {
+      stmt.execute("drop table if exists count_bench");
+      stmt.execute("create table count_bench (id bigint primary key, name varchar(64), score int)");
+    } finally {
+      CloseableUtil.closeQuietly(stmt);
+    }
+    conn.setAutoCommit(false);
+    PreparedStatement ps = conn.prepareStatement("insert into count_bench (id, name, score) values (?, ?, ?)");
+    try {
+      for (int i = 0; i < rows; i++) {
+        ps.setLong(1, i);
+        ps.setString(2, "name-" + i);
+        ps.setInt(3, i % 100);
+        ps.addBatch();
+        if (i % 1000 == 999) {
+          ps.executeBatch();
+        }
+      }
+      ps.executeBatch();
+      conn.commit();
+    } finally {
+      CloseableUtil.closeQuietly(ps);
+      conn.setAutoCommit(true);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws SQLException {
+    Statement stmt = conn.createStatement();
+    try {
+      stmt.execute("drop table count_bench");
+    } finally {
+      CloseableUtil.closeQuietly(stmt);
+      CloseableUtil.closeQuietly(conn);
+    }
+  }
+
+  @Benchmark
+  public long page() throws SQLException {
+    round = round % 50 + 1;
+    switch (strategy) {
+      case "count":
+        return read("select id, name, score" + WHERE + " limit 20 offset " + offset, false)
+          + scalar("select count(0) from count_bench where score < ?", true);
+      case "foundRows":
+        return read("select sql_calc_found_rows id, name, score" + WHERE + " limit 20 offset " + offset, false)
+          + scalar("select found_rows()", false);
+      case "window":
+        return read("select t_.*, count(*) over() as mybatis_total_ from (select id, name, score" + WHERE + ") t_ limit 20 offset " + offset, true);
+      case "pageOnly":
+        return read("select id, name, score" + WHERE + " limit 20 offset " + offset, false);
+      default:
+        throw new IllegalArgumentException(strategy);
+    }
+  }
+
+  private long read(String sql, boolean window) throws SQLException {
+    PreparedStatement ps = conn.prepareStatement(sql);
+    ResultSet rs = null;
+    long sum = 0;
+    try {
+      ps.setInt(1, 50 + round);
+      rs = ps.executeQuery();
+      while (rs.next()) {
+        sum += rs.getLong(1);
+        if (window) {
+          sum += rs.getLong(4);
+        }
+      }
+    } finally {
+      CloseableUtil.closeQuietly(rs);
+      CloseableUtil.closeQuietly(ps);
+    }
+    return sum;
+  }
+
+  private long scalar(String sql, boolean bind) throws SQLException {
+    PreparedStatement ps = conn.prepareStatement(sql);
+    ResultSet rs = null;
+    try {
+      if (bind) {
+        ps.setInt(1, 50 + round);
+      }
+      rs = ps.executeQuery();
+      return rs.next() ? rs.getLong(1) : 0;
+    } finally {
+      CloseableUtil.closeQuietly(rs);
+      CloseableUtil.closeQuietly(ps);
+    }
+  }
+}
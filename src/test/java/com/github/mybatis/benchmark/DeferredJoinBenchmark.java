@@ -0,0 +1,115 @@
+package com.github.mybatis.benchmark;
+
+import com.github.mybatis.util.CloseableUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 深分页时对比直接limit/offset(plain)和延迟关联(deferred，先按索引取本页主键再关联回表)。
+ *
+ * 默认使用h2内存库，mysql可以通过系统属性指定：
+ * -Dbenchmark.url=jdbc:mysql://host/db -Dbenchmark.user=... -Dbenchmark.password=...
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DeferredJoinBenchmark {
+  private static final String PLAIN = "select id, created, payload from deferred_bench order by created, id limit 20 offset ?";
+  private static final String DEFERRED = "select id, created, payload from deferred_bench join "
+    + "(select deferred_bench.id as tmp_id from deferred_bench order by created, id limit 20 offset ?) tmp_ids "
+    + "on deferred_bench.id = tmp_ids.tmp_id order by created, id";
+  @Param({"plain", "deferred"})
+  private String mode;
+  @Param({"10000", "100000", "1000000"})
+  private int offset;
+  @Param({"1010000"})
+  private int rows;
+  private Connection conn;
+  /**
+   * 每次调用稍微移动offset，避免h2直接复用上一次的查询结果
+   */
+  private int round;
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(DeferredJoinBenchmark.class.getSimpleName()).build()).run();
+  }
+
+  @Setup
+  public void setup() throws Exception {
+    conn = DriverManager.getConnection(System.getProperty("benchmark.url", "jdbc:h2:mem:deferred_bench"),
+      System.getProperty("benchmark.user", "sa"), System.getProperty("benchmark.password", ""));
+    Statement stmt = conn.createStatement();
+    try {
+      stmt.execute("drop table if exists deferred_bench");
+      stmt.execute("create table deferred_bench (id bigint primary key, created bigint, payload varchar(256))");
+      stmt.execute("create index idx_deferred_bench_created on deferred_bench (created, id)");
+    } finally {
+      CloseableUtil.closeQuietly(stmt);
+    }
+    StringBuilder payload = new StringBuilder(200);
+    while (payload.length() < 200) {
+      payload.append("deferred-join-payload-");
+    }
+    conn.setAutoCommit(false);
+    PreparedStatement ps = conn.prepareStatement("insert into deferred_bench (id, created, payload) values (?, ?, ?)");
+    try {
+      for (int i = 0; i < rows; i++) {
+        ps.setLong(1, i);
+        // created和主键的顺序不同，按created排序时必须回表读取
+        ps.setLong(2, (i * 7919L) % rows);
+        ps.setString(3, payload.toString());
+        ps.addBatch();
+        if (i % 1000 == 999) {
+          ps.executeBatch();
+        }
+      }
+      ps.executeBatch();
+      conn.commit();
+    } finally {
+      CloseableUtil.closeQuietly(ps);
+      conn.setAutoCommit(true);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws SQLException {
+    Statement stmt = conn.createStatement();
+    try {
+      stmt.execute("drop table deferred_bench");
+    } finally {
+      CloseableUtil.closeQuietly(stmt);
+      CloseableUtil.closeQuietly(conn);
+    }
+  }
+
+  @Benchmark
+  public long page() throws SQLException {
+    round = round % 50 + 1;
+    PreparedStatement ps = conn.prepareStatement("deferred".equals(mode) ? DEFERRED : PLAIN);
+    ResultSet rs = null;
+    long sum = 0;
+    try {
+      ps.setInt(1, offset + round);
+      rs = ps.executeQuery();
+      while (rs.next()) {
+        sum += rs.getLong(1) + rs.getString(3).length();
+      }
+    } finally {
+      CloseableUtil.closeQuietly(rs);
+      CloseableUtil.closeQuietly(ps);
+    }
+    return sum;
+  }
+}
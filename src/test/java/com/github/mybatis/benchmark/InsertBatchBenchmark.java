@@ -0,0 +1,87 @@
+package com.github.mybatis.benchmark;
+
+import com.github.mybatis.entity.TestBatch;
+import com.github.mybatis.mapper.TestBatchMapper;
+import com.github.mybatis.util.BatchUtil;
+import com.github.mybatis.util.CloseableUtil;
+import com.google.common.collect.Lists;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比多行INSERT(insertBatch)和ExecutorType.BATCH两种批量写入方式，基于h2内存库
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InsertBatchBenchmark {
+  @Param({"100", "1000", "10000"})
+  private int rows;
+  private SqlSessionFactory sqlSessionFactory;
+  private List<TestBatch> data;
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(InsertBatchBenchmark.class.getSimpleName()).build()).run();
+  }
+
+  @Setup
+  public void setup() throws Exception {
+    sqlSessionFactory = BenchmarkSupport.sqlSessionFactory();
+    data = Lists.newArrayListWithCapacity(rows);
+    for (int i = 0; i < rows; i++) {
+      data.add(new TestBatch("benchmark-" + i, i));
+    }
+  }
+
+  @TearDown(Level.Invocation)
+  public void cleanup() {
+    SqlSession session = sqlSessionFactory.openSession(true);
+    try {
+      session.getMapper(TestBatchMapper.class).deleteAll();
+    } finally {
+      CloseableUtil.closeQuietly(session);
+    }
+  }
+
+  @Benchmark
+  public int multiRowInsert() {
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      int n = session.getMapper(TestBatchMapper.class).insertBatch(data);
+      session.commit();
+      return n;
+    } finally {
+      CloseableUtil.closeQuietly(session);
+    }
+  }
+
+  @Benchmark
+  public int batchExecutor() {
+    return BatchUtil.insert(sqlSessionFactory, TestBatchMapper.class, data, 1000);
+  }
+
+  @Benchmark
+  public int singleInsert() {
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      TestBatchMapper mapper = session.getMapper(TestBatchMapper.class);
+      int n = 0;
+      for (TestBatch i : data) {
+        n += mapper.insert(i);
+      }
+      session.commit();
+      return n;
+    } finally {
+      CloseableUtil.closeQuietly(session);
+    }
+  }
+}
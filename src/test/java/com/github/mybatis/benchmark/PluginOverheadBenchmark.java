@@ -0,0 +1,79 @@
+package com.github.mybatis.benchmark;
+
+import com.github.mybatis.entity.TestBatch;
+import com.github.mybatis.interceptor.MasterSlaveInterceptor;
+import com.github.mybatis.interceptor.PaginationAutoMapInterceptor;
+import com.github.mybatis.mapper.TestBatchMapper;
+import com.github.mybatis.pagination.Page;
+import com.github.mybatis.util.CloseableUtil;
+import com.github.mybatis.util.ReflectionUtil;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每条语句经过插件的耗时：separate是MasterSlaveInterceptor加PaginationAutoMapInterceptor，
+ * fused只用开启了routing的PaginationAutoMapInterceptor(实体查询依赖它填充实体类型，不能去掉)。
+ * findById是普通查询，page是不count的分页查询
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PluginOverheadBenchmark {
+  @Param({"separate", "fused"})
+  private String plugins;
+  @Param({"findById", "page"})
+  private String statement;
+  private SqlSession session;
+  private TestBatchMapper mapper;
+  private long id;
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(PluginOverheadBenchmark.class.getSimpleName()).build()).run();
+  }
+
+  @Setup
+  public void setup() throws Exception {
+    SqlSessionFactory factory = BenchmarkSupport.sqlSessionFactory();
+    // 插件在创建Executor和StatementHandler时才生效，直接调整配置好的插件列表
+    Object chain = ReflectionUtil.getFieldValue(factory.getConfiguration(), "interceptorChain");
+    List<Interceptor> interceptors = ReflectionUtil.getFieldValue(chain, "interceptors");
+    for (Iterator<Interceptor> it = interceptors.iterator(); it.hasNext(); ) {
+      Interceptor i = it.next();
+      if ("fused".equals(plugins) && i instanceof MasterSlaveInterceptor) {
+        it.remove();
+      } else if ("fused".equals(plugins) && i instanceof PaginationAutoMapInterceptor) {
+        ((PaginationAutoMapInterceptor) i).setRouting(true);
+      }
+    }
+    session = factory.openSession(true);
+    mapper = session.getMapper(TestBatchMapper.class);
+    TestBatch row = new TestBatch("overhead", 901);
+    mapper.insertAndGetId(row);
+    id = row.getId();
+  }
+
+  @TearDown
+  public void tearDown() {
+    CloseableUtil.closeQuietly(session);
+  }
+
+  @Benchmark
+  public Object query() {
+    if ("page".equals(statement)) {
+      Page<TestBatch> page = new Page<>(1, 10, false);
+      return mapper.pagination3(page, "score = 901", "id");
+    }
+    return mapper.findById(id);
+  }
+}
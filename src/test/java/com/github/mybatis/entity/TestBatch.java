@@ -0,0 +1,33 @@
+package com.github.mybatis.entity;
+
+import javax.persistence.Table;
+
+@Table(name = "test_batch")
+public class TestBatch extends IdEntity {
+  private String name;
+  private Integer score;
+
+  public TestBatch() {
+  }
+
+  public TestBatch(String name, Integer score) {
+    this.name = name;
+    this.score = score;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public Integer getScore() {
+    return score;
+  }
+
+  public void setScore(Integer score) {
+    this.score = score;
+  }
+}
@@ -0,0 +1,55 @@
+package com.github.mybatis.entity;
+
+import com.github.mybatis.annotation.TableSplitPolicy;
+
+import javax.persistence.Table;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * 按天分表
+ */
+@Table(name = "test_shard")
+@TableSplitPolicy
+public class TestShard extends IdEntity {
+  private String name;
+  private Integer score;
+  private Date createTime;
+
+  public TestShard() {
+  }
+
+  public TestShard(String name, Integer score, Date createTime) {
+    this.name = name;
+    this.score = score;
+    this.createTime = createTime;
+  }
+
+  public String getPostfix() {
+    return new SimpleDateFormat("yyyyMMdd").format(createTime);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public Integer getScore() {
+    return score;
+  }
+
+  public void setScore(Integer score) {
+    this.score = score;
+  }
+
+  public Date getCreateTime() {
+    return createTime;
+  }
+
+  public void setCreateTime(Date createTime) {
+    this.createTime = createTime;
+  }
+}
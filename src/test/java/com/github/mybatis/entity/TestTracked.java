@@ -0,0 +1,28 @@
+package com.github.mybatis.entity;
+
+import javax.persistence.Table;
+
+/**
+ * 和TestBatch使用同一张表，测试只更新修改过的列
+ */
+@Table(name = "test_batch")
+public class TestTracked extends TrackedEntity {
+  private String name;
+  private Integer score;
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public Integer getScore() {
+    return score;
+  }
+
+  public void setScore(Integer score) {
+    this.score = score;
+  }
+}
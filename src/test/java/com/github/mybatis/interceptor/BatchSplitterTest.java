@@ -0,0 +1,49 @@
+package com.github.mybatis.interceptor;
+
+import com.github.mybatis.entity.TestBatch;
+import com.github.mybatis.util.EntityUtil;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BatchSplitterTest {
+
+  @Test
+  public void testSplit() throws Exception {
+    List<TestBatch> rows = Lists.newArrayList();
+    for (int i = 0; i < 25; i++) {
+      rows.add(new TestBatch(Strings.repeat("x", 60), i));
+    }
+    // 按行数拆分
+    List<List<Object>> batches = BatchSplitter.split(rows, 10, Long.MAX_VALUE);
+    assertEquals(3, batches.size());
+    assertEquals(10, batches.get(0).size());
+    assertEquals(5, batches.get(2).size());
+
+    // 按数据包大小拆分
+    long rowSize = BatchSplitter.estimateSize(EntityUtil.getMeta(TestBatch.class), rows.get(0));
+    batches = BatchSplitter.split(rows, 1000, 1024 + rowSize * 4);
+    assertEquals(7, batches.size());
+    assertEquals(4, batches.get(0).size());
+    assertEquals(1, batches.get(6).size());
+  }
+
+  @Test
+  public void testSplitByNonNullColumns() throws Exception {
+    List<TestBatch> rows = Lists.newArrayList();
+    for (int i = 0; i < 6; i++) {
+      rows.add(new TestBatch("row-" + i, i % 2 == 0 ? null : i));
+    }
+    // 非空列不同的行不能放在同一条语句中
+    List<List<Object>> batches = BatchSplitter.split(rows, 10, Long.MAX_VALUE);
+    assertEquals(2, batches.size());
+    assertEquals(3, batches.get(0).size());
+    assertNull(((TestBatch) batches.get(0).get(2)).getScore());
+    assertEquals(5, ((TestBatch) batches.get(1).get(2)).getScore().intValue());
+  }
+}
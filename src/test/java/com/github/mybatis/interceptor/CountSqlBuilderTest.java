@@ -0,0 +1,93 @@
+package com.github.mybatis.interceptor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CountSqlBuilderTest {
+
+  @Test
+  public void testSimple() throws Exception {
+    assertEquals("select count(0) FROM blog WHERE author = ?",
+      CountSqlBuilder.rewrite("SELECT `id`, `author` FROM blog WHERE author = ? ORDER BY id desc"));
+    // select列表里的子查询和字符串不影响from的识别
+    assertEquals("select count(0) from blog b where b.content like 'from%'",
+      CountSqlBuilder.rewrite("select b.id, (select count(*) from comment c where c.blog_id = b.id) n from blog b where b.content like 'from%' order by b.id"));
+  }
+
+  @Test
+  public void testWrap() throws Exception {
+    assertEquals("select count(0) from (select distinct author from blog) tmp_count",
+      CountSqlBuilder.rewrite("select distinct author from blog order by author"));
+    assertEquals("select count(0) from (select 1 from test_batch where score > 1 group by score) tmp_count",
+      CountSqlBuilder.rewrite("select id, name, score from test_batch where score > 1 group by score order by score"));
+    assertEquals("select count(0) from (select score, count(*) n from test_batch group by score having count(*) > 1) tmp_count",
+      CountSqlBuilder.rewrite("select score, count(*) n from test_batch group by score having count(*) > 1"));
+    assertEquals("select count(0) from (select a from t1 union select a from t2) tmp_count",
+      CountSqlBuilder.rewrite("select a from t1 union select a from t2 order by a"));
+    // order by里有参数时不能去掉
+    assertEquals("select count(0) from (select id from blog order by field(id, ?)) tmp_count",
+      CountSqlBuilder.rewrite("select id from blog order by field(id, ?)"));
+  }
+
+  @Test
+  public void testLeftJoin() throws Exception {
+    // 按主键关联且没有用到的left join可以去掉
+    assertEquals("select count(0) from blog b where b.author = ?",
+      CountSqlBuilder.rewrite("select b.*, u.name from blog b left join user u on u.id = b.user_id where b.author = ? order by b.id"));
+    assertEquals("select count(0) from blog b",
+      CountSqlBuilder.rewrite("select b.*, u.name from blog b left outer join `user` as u on b.user_id = `u`.`id`"));
+    // 条件里用到了关联表
+    assertEquals("select count(0) from blog b left join user u on u.id = b.user_id where u.name = ?",
+      CountSqlBuilder.rewrite("select b.* from blog b left join user u on u.id = b.user_id where u.name = ?"));
+    // 不是按主键关联，可能一对多
+    assertEquals("select count(0) from blog b left join comment c on c.blog_id = b.id",
+      CountSqlBuilder.rewrite("select b.* from blog b left join comment c on c.blog_id = b.id"));
+    // 不带别名的列无法确定属于哪张表
+    assertEquals("select count(0) from blog b left join user u on u.id = b.user_id where name = ?",
+      CountSqlBuilder.rewrite("select b.* from blog b left join user u on u.id = b.user_id where name = ?"));
+  }
+
+  @Test
+  public void testWindowCount() throws Exception {
+    // 加在原语句的select列表里，order by和分页仍然在同一层
+    assertEquals("select id, name, count(*) over() as total from test_batch where score = ? order by id desc",
+      CountSqlBuilder.windowCount("select id, name from test_batch where score = ? order by id desc", "total"));
+    assertEquals("select b.*, (select count(*) from comment c where c.blog_id = b.id) n, count(*) over() as total from blog b order by b.id",
+      CountSqlBuilder.windowCount("select b.*, (select count(*) from comment c where c.blog_id = b.id) n from blog b order by b.id", "total"));
+    // 分组后每组一行，窗口函数统计的是组数
+    assertEquals("select score, count(*) n, count(*) over() as total from test_batch group by score order by score",
+      CountSqlBuilder.windowCount("select score, count(*) n from test_batch group by score order by score", "total"));
+    assertNull(CountSqlBuilder.windowCount("select distinct author from blog order by author", "total"));
+    assertNull(CountSqlBuilder.windowCount("select a from t1 union select a from t2 order by a", "total"));
+    assertNull(CountSqlBuilder.windowCount("select * from blog order by id", "total"));
+    // 结果按sql和列名缓存，无法改写的也只分析一次
+    String sql = "select id from blog order by id";
+    assertSame(CountSqlBuilder.windowCount(sql, "total"), CountSqlBuilder.windowCount(sql, "total"));
+    assertEquals("select id, count(*) over() as n from blog order by id", CountSqlBuilder.windowCount(sql, "n"));
+    assertNull(CountSqlBuilder.windowCount("select * from blog order by id", "total"));
+  }
+
+  @Test
+  public void testFoundRows() throws Exception {
+    String sql = "SELECT id from blog order by id";
+    assertEquals("SELECT sql_calc_found_rows id from blog order by id", CountSqlBuilder.foundRows(sql));
+    assertSame(CountSqlBuilder.foundRows(sql), CountSqlBuilder.foundRows(sql));
+  }
+
+  @Test
+  public void testSingleTable() throws Exception {
+    assertEquals("blog", CountSqlBuilder.singleTable(CountSqlBuilder.rewrite("SELECT `id`, `author` FROM `blog` ORDER BY id")));
+    assertNull(CountSqlBuilder.singleTable(CountSqlBuilder.rewrite("select id from blog where author = ?")));
+    assertNull(CountSqlBuilder.singleTable(CountSqlBuilder.rewrite("select distinct author from blog")));
+  }
+
+  @Test
+  public void testCache() throws Exception {
+    String sql = "select id from blog where author = ? order by id";
+    String first = CountSqlBuilder.build(sql);
+    long hits = CountSqlBuilder.stats().hitCount();
+    assertSame(first, CountSqlBuilder.build(sql));
+    assertEquals(hits + 1, CountSqlBuilder.stats().hitCount());
+  }
+}
@@ -0,0 +1,36 @@
+package com.github.mybatis.interceptor;
+
+import com.github.mybatis.pagination.dialect.Dialects;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DeferredJoinBuilderTest {
+
+  @Test
+  public void testRewrite() throws Exception {
+    assertEquals("select `id`, `name` from blog join (select blog.id as tmp_id from blog WHERE author = ? ORDER BY id desc limit ?, ?) tmp_ids"
+        + " on blog.id = tmp_ids.tmp_id ORDER BY id desc",
+      DeferredJoinBuilder.build("SELECT `id`, `name` FROM blog WHERE author = ? ORDER BY id desc", Dialects.of("mysql")));
+    assertEquals("select `blog`.* from `blog` join (select `blog`.id as tmp_id from `blog` order by score, id limit ? offset ?) tmp_ids"
+        + " on `blog`.id = tmp_ids.tmp_id order by score, id",
+      DeferredJoinBuilder.build("select * from `blog` order by score, id", Dialects.of("h2")));
+  }
+
+  @Test
+  public void testSkip() throws Exception {
+    // 没有排序
+    assertNull(DeferredJoinBuilder.split("select id, name from blog where author = ?"));
+    // 多表、别名
+    assertNull(DeferredJoinBuilder.split("select b.id from blog b order by b.id"));
+    assertNull(DeferredJoinBuilder.split("select blog.id from blog left join user on user.id = blog.user_id order by blog.id"));
+    // 分组、去重、聚合
+    assertNull(DeferredJoinBuilder.split("select score from blog group by score order by score"));
+    assertNull(DeferredJoinBuilder.split("select distinct score from blog order by score"));
+    assertNull(DeferredJoinBuilder.split("select count(*) from blog order by 1"));
+    // order by里的参数
+    assertNull(DeferredJoinBuilder.split("select id from blog order by field(id, ?)"));
+    // 子查询里的order by不影响
+    assertNotNull(DeferredJoinBuilder.split("select id from blog where id in (select blog_id from comment order by id) order by id"));
+  }
+}
@@ -0,0 +1,76 @@
+package com.github.mybatis.interceptor;
+
+import com.github.mybatis.entity.Blog;
+import com.github.mybatis.entity.TestTracked;
+import com.github.mybatis.pagination.Page;
+import com.github.mybatis.provider.CrudProvider;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.SelectProvider;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class MapperMetaTest {
+
+  @Test
+  public void testFindMethod() throws Exception {
+    // 没有注解的同名方法排在前面也不会被选中
+    Method method = MapperMeta.findMethod(ChildMapper.class, "find");
+    assertNotNull(method.getAnnotation(SelectProvider.class));
+    assertEquals(1, method.getParameterTypes().length);
+    // 子接口重新声明的方法优先
+    method = MapperMeta.findMethod(ChildMapper.class, "findAll");
+    assertEquals(ChildMapper.class, method.getDeclaringClass());
+    assertNull(MapperMeta.findMethod(ChildMapper.class, "none"));
+  }
+
+  @Test
+  public void testAcceptsPage() throws Exception {
+    assertTrue(MapperMeta.acceptsPage(Page.class));
+    assertTrue(MapperMeta.acceptsPage(Object.class));
+    assertTrue(MapperMeta.acceptsPage(Map.class));
+    assertTrue(MapperMeta.acceptsPage(String.class, Page.class));
+    assertFalse(MapperMeta.acceptsPage(Long.class));
+    assertFalse(MapperMeta.acceptsPage(Serializable.class));
+    assertFalse(MapperMeta.acceptsPage(List.class));
+    assertFalse(MapperMeta.acceptsPage(String.class, int.class));
+    assertFalse(MapperMeta.acceptsPage());
+  }
+
+  @Test
+  public void testMayReturnTracked() throws Exception {
+    assertTrue(MapperMeta.mayReturnTracked(resultMaps(TestTracked.class)));
+    assertTrue(MapperMeta.mayReturnTracked(resultMaps(Object.class)));
+    assertFalse(MapperMeta.mayReturnTracked(resultMaps(Blog.class)));
+    assertFalse(MapperMeta.mayReturnTracked(resultMaps(Map.class)));
+  }
+
+  private static List<ResultMap> resultMaps(Class<?> type) {
+    return Collections.singletonList(new ResultMap.Builder(new Configuration(), "test", type, Collections.<ResultMapping>emptyList()).build());
+  }
+
+  interface BaseMapper<T> {
+    @SelectProvider(type = CrudProvider.class, method = "findByPage")
+    List<T> find(Map<String, Object> parameter);
+
+    @Select("select * from blog")
+    List<T> findAll();
+  }
+
+  interface ChildMapper extends BaseMapper<String> {
+    List<String> find(String name, int limit);
+
+    @Override
+    @Select("select * from blog order by id")
+    List<String> findAll();
+  }
+}
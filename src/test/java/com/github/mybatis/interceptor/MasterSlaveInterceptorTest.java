@@ -0,0 +1,99 @@
+package com.github.mybatis.interceptor;
+
+import com.github.mybatis.annotation.ReadFromMaster;
+import com.github.mybatis.annotation.ReadFromReplica;
+import com.github.mybatis.annotation.Route;
+import com.github.mybatis.spring.DynamicDataSource;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class MasterSlaveInterceptorTest {
+
+  private static StatementRoute resolve(Configuration conf, Class<?> mapper, String method, Object parameter) {
+    MappedStatement ms = conf.getMappedStatement(mapper.getName() + '.' + method);
+    return MasterSlaveInterceptor.resolve(ms, ms.getBoundSql(parameter));
+  }
+
+  @Test
+  public void testAnnotations() throws Exception {
+    Configuration conf = new Configuration();
+    conf.addMapper(ReportMapper.class);
+    MasterSlaveInterceptor.prepareRoutes(conf);
+    assertEquals("reportPool", resolve(conf, ReportMapper.class, "report", null).pool);
+    assertTrue(resolve(conf, ReportMapper.class, "report", null).readOnly);
+    // 方法上的注解优先于接口上的
+    assertSame(StatementRoute.MASTER, resolve(conf, ReportMapper.class, "fresh", null));
+    assertEquals(DynamicDataSource.MASTER_POOL, StatementRoute.MASTER.pool);
+    assertSame(StatementRoute.REPLICA, resolve(conf, ReportMapper.class, "rowCount", null));
+    // 写语句总是走主库
+    assertSame(StatementRoute.WRITE, resolve(conf, ReportMapper.class, "insert", null));
+  }
+
+  @Test
+  public void testSqlFallback() throws Exception {
+    Configuration conf = new Configuration();
+    // 没有调用prepareRoutes，第一次执行时补上
+    conf.addMapper(PlainMapper.class);
+    assertSame(StatementRoute.REPLICA, resolve(conf, PlainMapper.class, "findAll", null));
+    assertSame(StatementRoute.WRITE, resolve(conf, PlainMapper.class, "lastId", null));
+    // 动态sql按每次执行时的sql判断
+    Map<String, Object> parameter = Collections.<String, Object>singletonMap("last", Boolean.TRUE);
+    assertSame(StatementRoute.WRITE, resolve(conf, PlainMapper.class, "dynamic", parameter));
+    parameter = Collections.<String, Object>singletonMap("last", Boolean.FALSE);
+    assertSame(StatementRoute.REPLICA, resolve(conf, PlainMapper.class, "dynamic", parameter));
+  }
+
+  @Test
+  public void testReaderPool() throws Exception {
+    Configuration conf = new Configuration();
+    conf.addMapper(ReportMapper.class);
+    // 并行执行的配套查询跟着语句的路由走，语句要读主库时也读主库
+    assertEquals("reportPool", readerPool(conf, "report"));
+    assertEquals(DynamicDataSource.MASTER_POOL, readerPool(conf, "fresh"));
+    assertNull(readerPool(conf, "rowCount"));
+    assertEquals(DynamicDataSource.MASTER_POOL, readerPool(conf, "insert"));
+  }
+
+  private static String readerPool(Configuration conf, String method) {
+    MappedStatement ms = conf.getMappedStatement(ReportMapper.class.getName() + '.' + method);
+    return MasterSlaveInterceptor.readerPool(null, ms, ms.getBoundSql(null));
+  }
+
+  @Route("reportPool")
+  interface ReportMapper {
+    @Select("select count(*) from blog")
+    int report();
+
+    @ReadFromMaster
+    @Select("select count(*) from blog")
+    int fresh();
+
+    @ReadFromReplica
+    @Select("select row_count()")
+    int rowCount();
+
+    @ReadFromReplica
+    @Insert("insert into blog (author) values ('x')")
+    int insert();
+  }
+
+  interface PlainMapper {
+    @Select("select * from blog")
+    List<Map<String, Object>> findAll();
+
+    @Select("select last_insert_id()")
+    long lastId();
+
+    @Select("<script>select <if test='last'>last_insert_id()</if><if test='!last'>1</if></script>")
+    long dynamic(Map<String, Object> parameter);
+  }
+}
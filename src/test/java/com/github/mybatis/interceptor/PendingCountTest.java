@@ -0,0 +1,45 @@
+package com.github.mybatis.interceptor;
+
+import com.github.mybatis.util.CloseableUtil;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+public class PendingCountTest {
+
+  @Test
+  public void testWindowTotal() throws Exception {
+    Connection conn = DriverManager.getConnection("jdbc:h2:mem:pending_count");
+    Statement stmt = null;
+    try {
+      stmt = conn.createStatement();
+      PendingCount pending = new PendingCount(PaginationAutoMapInterceptor.COUNT_STRATEGY_WINDOW, null, null, null, null);
+      Statement wrapped = pending.wrap(stmt);
+      // h2没有窗口函数，用常量列模拟COUNT(*) OVER()的结果
+      assertTrue(wrapped.execute("select x as id, 42 as " + PendingCount.TOTAL_COLUMN + " from system_range(1, 3)"));
+      assertEquals(-1, pending.total);
+      ResultSet rs = wrapped.getResultSet();
+      int rows = 0;
+      while (rs.next()) {
+        rows++;
+      }
+      assertEquals(3, rows);
+      assertEquals(42, pending.total);
+
+      // 没有数据时拿不到总行数
+      PendingCount empty = new PendingCount(PaginationAutoMapInterceptor.COUNT_STRATEGY_WINDOW, null, null, null, null);
+      wrapped = empty.wrap(stmt);
+      wrapped.execute("select x as id, 42 as " + PendingCount.TOTAL_COLUMN + " from system_range(1, 3) where x > 3");
+      assertFalse(wrapped.getResultSet().next());
+      assertEquals(-1, empty.total);
+    } finally {
+      CloseableUtil.closeQuietly(stmt);
+      CloseableUtil.closeQuietly(conn);
+    }
+  }
+}
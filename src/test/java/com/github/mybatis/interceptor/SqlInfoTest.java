@@ -0,0 +1,24 @@
+package com.github.mybatis.interceptor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SqlInfoTest {
+
+  @Test
+  public void testScan() throws Exception {
+    SqlInfo select = SqlInfo.scan("  SELECT id FROM blog WHERE author = 'ORDER BY' GROUP\n BY author Order  By id");
+    assertTrue(select.isSelect());
+    assertEquals(8, select.getFirstWordEnd());
+
+    SqlInfo lastId = SqlInfo.scan("SELECT LAST_INSERT_ID()");
+    assertTrue(lastId.usesLastInsertId());
+    assertFalse(lastId.usesRowCount());
+    assertTrue(SqlInfo.scan("select row_count()").usesRowCount());
+    assertFalse(SqlInfo.scan("select 'last_insert_id()' from dual").usesLastInsertId());
+
+    assertFalse(SqlInfo.scan("/* hint */ UPDATE blog SET author = ?").isSelect());
+    assertSame(SqlInfo.of("select 1"), SqlInfo.of("select 1"));
+  }
+}
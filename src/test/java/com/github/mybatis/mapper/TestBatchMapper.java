@@ -0,0 +1,19 @@
+package com.github.mybatis.mapper;
+
+import com.github.mybatis.annotation.AutoResultMap;
+import com.github.mybatis.annotation.Projection;
+import com.github.mybatis.entity.TestBatch;
+import com.github.mybatis.pagination.Page;
+import com.github.mybatis.provider.CrudProvider;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.SelectProvider;
+
+/**
+ * 测试批量操作
+ */
+public interface TestBatchMapper extends ICrudPaginationMapper<TestBatch> {
+  @SelectProvider(type = CrudProvider.class, method = "findByPage")
+  @AutoResultMap
+  @Projection({"id", "name"})
+  Page<TestBatch> findNames(@Param(CrudProvider.PAGE_KEY) Page page);
+}
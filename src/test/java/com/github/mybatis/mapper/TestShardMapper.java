@@ -0,0 +1,9 @@
+package com.github.mybatis.mapper;
+
+import com.github.mybatis.entity.TestShard;
+
+/**
+ * 测试分表查询
+ */
+public interface TestShardMapper extends ICrudPaginationMapper<TestShard> {
+}
@@ -0,0 +1,9 @@
+package com.github.mybatis.mapper;
+
+import com.github.mybatis.entity.TestTracked;
+
+/**
+ * 测试只更新修改过的列
+ */
+public interface TestTrackedMapper extends ICrudMapper<TestTracked> {
+}
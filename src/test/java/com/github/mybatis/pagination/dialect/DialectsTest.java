@@ -0,0 +1,67 @@
+package com.github.mybatis.pagination.dialect;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DialectsTest {
+
+  @Test
+  public void testBuiltin() throws Exception {
+    String sql = "select id from blog";
+    Dialect mysql = Dialects.of("mysql");
+    assertEquals("select id from blog limit ?, ?", mysql.getPageSql(sql));
+    assertArrayEquals(new int[]{20, 10}, mysql.getPageParameters(20, 10));
+    assertTrue(mysql.supportsFoundRows());
+    // 5.x没有窗口函数，window策略退回到count语句
+    assertFalse(mysql.supportsWindowFunctions());
+    assertTrue(Dialects.of("mysql8").supportsWindowFunctions());
+
+    Dialect h2 = Dialects.of("h2");
+    assertEquals("select id from blog limit ? offset ?", h2.getPageSql(sql));
+    assertArrayEquals(new int[]{10, 20}, h2.getPageParameters(20, 10));
+    assertFalse(h2.supportsWindowFunctions());
+
+    Dialect postgresql = Dialects.of("postgresql");
+    assertEquals("select id from blog limit ? offset ?", postgresql.getPageSql(sql));
+    assertTrue(postgresql.supportsWindowFunctions());
+
+    Dialect oracle12c = Dialects.of("oracle12c");
+    assertEquals("select id from blog offset ? rows fetch next ? rows only", oracle12c.getPageSql(sql));
+    assertArrayEquals(new int[]{20, 10}, oracle12c.getPageParameters(20, 10));
+
+    assertArrayEquals(new int[]{30, 20}, Dialects.of("oracle").getPageParameters(20, 10));
+  }
+
+  @Test
+  public void testUpsert() throws Exception {
+    String[] columns = {"id", "name"};
+    String[][] rows = {{"?", "?"}, {"?", "?"}};
+    assertEquals("INSERT INTO t (`id`,`name`) VALUES (?,?),(?,?) ON DUPLICATE KEY UPDATE `name`=VALUES(`name`)",
+      Dialects.of("mysql").getUpsertSql("t", columns, rows));
+    assertEquals("MERGE INTO t (`id`,`name`) KEY(`id`) VALUES (?,?),(?,?)", Dialects.of("h2").getUpsertSql("t", columns, rows));
+    // 没有id的行由自增列生成主键
+    assertEquals("MERGE INTO t (`id`,`name`) KEY(`id`) VALUES (NULL,?)",
+      Dialects.of("h2").getUpsertSql("t", new String[]{"name"}, new String[][]{{"?"}}));
+    assertEquals("INSERT INTO t (\"id\",\"name\") VALUES (?,?),(?,?) ON CONFLICT (\"id\") DO UPDATE SET \"name\"=EXCLUDED.\"name\"",
+      Dialects.of("postgresql").getUpsertSql("t", columns, rows));
+    assertEquals("INSERT INTO t (\"id\") VALUES (?) ON CONFLICT (\"id\") DO NOTHING",
+      Dialects.of("postgresql").getUpsertSql("t", new String[]{"id"}, new String[][]{{"?"}}));
+    assertEquals("MERGE INTO t tmp_t USING (SELECT ? id,? name FROM dual UNION ALL SELECT ? id,? name FROM dual) tmp_s"
+        + " ON (tmp_t.id = tmp_s.id) WHEN MATCHED THEN UPDATE SET tmp_t.name = tmp_s.name"
+        + " WHEN NOT MATCHED THEN INSERT (id,name) VALUES (tmp_s.id,tmp_s.name)",
+      Dialects.of("oracle12c").getUpsertSql("t", columns, rows));
+    assertFalse(Dialects.of("hsqldb").supportsUpsert());
+    assertNull(Dialects.of("hsqldb").getUpsertSql("t", columns, rows));
+  }
+
+  @Test
+  public void testCustom() throws Exception {
+    assertTrue(Dialects.of(PostgreSqlDialect.class.getName()) instanceof PostgreSqlDialect);
+    try {
+      Dialects.of("sybase");
+      fail("unknown dialect");
+    } catch (IllegalArgumentException ignored) {
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package com.github.mybatis.provider;
+
+import com.github.mybatis.entity.Blog;
+import com.github.mybatis.pagination.Page;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CrudProviderTest {
+
+  @Test
+  public void testStatementCache() throws Exception {
+    CrudProvider provider = new CrudProvider();
+    Blog blog = new Blog();
+    blog.setAuthor("colin");
+    blog.setContent("cache");
+
+    long hits = StatementCache.getHitCount();
+    String first = provider.insert(blog);
+    Blog other = new Blog();
+    other.setAuthor("lirui");
+    other.setContent("cache again");
+    String second = provider.insert(other);
+    assertSame(first, second);
+    assertTrue(StatementCache.getHitCount() > hits);
+
+    // 非空列不一样，生成的语句也不一样
+    other.setAccessDate(new java.util.Date());
+    String third = provider.insert(other);
+    assertNotEquals(first, third);
+    assertTrue(third.contains("access_date"));
+    assertFalse(first.contains("access_date"));
+
+    assertSame(provider.findAll(Blog.class), provider.findAll(Blog.class));
+  }
+
+  @Test
+  public void testUpsertDialect() throws Exception {
+    CrudProvider provider = new CrudProvider();
+    Blog blog = new Blog();
+    blog.setId(1L);
+    blog.setAuthor("colin");
+    Map<String, Object> parameter = new HashMap<>();
+    parameter.put(CrudProvider.PARA_KEY, blog);
+    parameter.put(CrudProvider.DIALECT_KEY, "mysql");
+    String mysql = provider.upsert(parameter);
+    assertTrue(mysql.startsWith("INSERT INTO blog"));
+    assertTrue(mysql.endsWith("ON DUPLICATE KEY UPDATE `author`=VALUES(`author`)"));
+
+    parameter.put(CrudProvider.DIALECT_KEY, "h2");
+    String h2 = provider.upsert(parameter);
+    assertTrue(h2.startsWith("MERGE INTO blog"));
+    assertTrue(h2.contains("KEY(`id`)"));
+
+    parameter.put(CrudProvider.DIALECT_KEY, "hsqldb");
+    try {
+      provider.upsert(parameter);
+      fail("unsupported dialect");
+    } catch (IllegalStateException ignored) {
+    }
+  }
+
+  @Test
+  public void testProjection() throws Exception {
+    CrudProvider provider = new CrudProvider();
+    String all = provider.findAll(Blog.class);
+    assertFalse(all.contains("*"));
+    for (String column : new String[]{"`id`", "`author`", "`content`", "`access_date`"}) {
+      assertTrue(all.contains(column));
+    }
+
+    Map<String, Object> parameter = new HashMap<>();
+    parameter.put(CrudProvider.CLASS_KEY, Blog.class);
+    parameter.put(CrudProvider.PROJECTION_KEY, new String[]{"author"});
+    assertEquals("SELECT `author`\nFROM blog", provider.findAllWith(parameter));
+
+    parameter.put(CrudProvider.PROJECTION_KEY, new String[]{"title"});
+    try {
+      provider.findAllWith(parameter);
+      fail("unknown property");
+    } catch (IllegalArgumentException ignored) {
+    }
+  }
+
+  @Test
+  public void testKeyset() throws Exception {
+    CrudProvider provider = new CrudProvider();
+    Page<Blog> page = Page.keyset(10, "author", "id");
+    page.setCursor(new Object[]{"colin", 5L});
+    Map<String, Object> parameter = new HashMap<>();
+    parameter.put(CrudProvider.CLASS_KEY, Blog.class);
+    parameter.put(CrudProvider.PAGE_KEY, page);
+    String sql = provider.findByPage(parameter);
+    assertTrue(sql.contains("(`author`>=#{cursor0} AND ((`author`>#{cursor0}) OR (`author`=#{cursor0} AND `id`>#{cursor1})))"));
+    assertTrue(sql.endsWith("ORDER BY `author`, `id`"));
+    assertEquals("colin", parameter.get("cursor0"));
+    assertEquals(5L, parameter.get("cursor1"));
+  }
+}
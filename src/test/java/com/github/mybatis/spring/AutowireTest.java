@@ -1,5 +1,6 @@
 package com.github.mybatis.spring;
 
+import com.alibaba.druid.pool.DruidPooledConnection;
 import com.github.mybatis.entity.Blog;
 import com.github.mybatis.mapper.BlogMapper;
 import org.junit.Test;
@@ -9,8 +10,15 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import javax.annotation.PostConstruct;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
 import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -22,6 +30,8 @@ import static org.junit.Assert.assertTrue;
 public class AutowireTest {
   @Autowired
   private BlogMapper mapper;
+  @Autowired
+  private DynamicDataSource dataSource;
 
   @PostConstruct
   void init() {
@@ -38,4 +48,109 @@ public class AutowireTest {
     int num = mapper.insertAndGetId(b);
     assertTrue(1 == num);
   }
+
+  @Test
+  public void testReadYourWrites() throws Exception {
+    assertTrue(isReplica(true));
+    dataSource.setStickyMillis(60000);
+    try {
+      assertFalse(isReplica(false));
+      assertFalse(isReplica(true));
+      // 超过粘滞时间后恢复读写分离
+      dataSource.setStickyMillis(1);
+      Thread.sleep(5);
+      assertTrue(isReplica(true));
+    } finally {
+      dataSource.setStickyMillis(0);
+    }
+  }
+
+  @Test
+  public void testRoutePool() throws Exception {
+    dataSource.setStickyMillis(60000);
+    try {
+      // 读主库不算写入
+      assertFalse(isReplica(false, DynamicDataSource.MASTER_POOL));
+      assertTrue(isReplica(true, null));
+      // 没有配置的命名读库按普通查询处理
+      assertTrue(isReplica(true, "reportPool"));
+    } finally {
+      dataSource.setStickyMillis(0);
+    }
+  }
+
+  @Test
+  public void testEstimateReadsReplica() throws Exception {
+    dataSource.setStickyMillis(60000);
+    try {
+      assertTrue(mapper.estimateAll() >= 0);
+      // 读统计信息不算写入，不会让后面的读粘在主库上
+      assertTrue(isReplica(true));
+    } finally {
+      dataSource.setStickyMillis(0);
+    }
+  }
+
+  @Test
+  public void testReaderConnection() throws Exception {
+    ReplicaSet.Replica replica = dataSource.getReplicaSet().getReplicas()[0];
+    // 读库连接和普通查询一样计入正在使用的连接数
+    Connection conn = dataSource.getReaderConnection(null);
+    conn.unwrap(DruidPooledConnection.class);
+    assertEquals(1, replica.getInFlight());
+    conn.close();
+    assertEquals(0, replica.getInFlight());
+    assertTrue(isReplica(dataSource.getReaderConnection(null)));
+    assertFalse(isReplica(dataSource.getReaderConnection(DynamicDataSource.MASTER_POOL)));
+    dataSource.setStickyMillis(60000);
+    try {
+      assertFalse(isReplica(false));
+      // 粘滞在调用线程上判断，交给其他线程的连接也读主库
+      assertFalse(isReplica(dataSource.getReaderConnection(null)));
+      dataSource.setStickyMillis(1);
+      Thread.sleep(5);
+      assertTrue(isReplica(dataSource.getReaderConnection(null)));
+    } finally {
+      dataSource.setStickyMillis(0);
+    }
+  }
+
+  /**
+   * 在另一个线程上使用连接，返回是否连到了读库
+   */
+  private static boolean isReplica(final Connection conn) throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      return executor.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          try {
+            DruidPooledConnection pooled = conn.unwrap(DruidPooledConnection.class);
+            return pooled.getConnectionHolder().getDataSource().getName().endsWith("-slave");
+          } finally {
+            conn.close();
+          }
+        }
+      }).get();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private boolean isReplica(boolean readOnly) throws Exception {
+    return isReplica(readOnly, null);
+  }
+
+  private boolean isReplica(boolean readOnly, String pool) throws Exception {
+    Connection conn = dataSource.getConnection();
+    try {
+      LazyConnection lazy = (LazyConnection) Proxy.getInvocationHandler(conn);
+      lazy.setRouteReadOnly(readOnly);
+      lazy.setRoutePool(pool);
+      DruidPooledConnection pooled = conn.unwrap(DruidPooledConnection.class);
+      return pooled.getConnectionHolder().getDataSource().getName().endsWith("-slave");
+    } finally {
+      conn.close();
+    }
+  }
 }
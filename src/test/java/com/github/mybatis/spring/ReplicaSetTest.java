@@ -0,0 +1,184 @@
+package com.github.mybatis.spring;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.github.mybatis.util.CloseableUtil;
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ReplicaSetTest {
+  private ReplicaSet set;
+  private DruidDataSource master;
+
+  @After
+  public void tearDown() {
+    if (set != null) {
+      set.close();
+    }
+    CloseableUtil.closeQuietly(master);
+  }
+
+  private ReplicaSet build(int... weights) {
+    List<ReplicaSet.Replica> list = Lists.newArrayList();
+    for (int i = 0; i < weights.length; i++) {
+      list.add(new ReplicaSet.Replica("slave" + i, dataSource("replica" + i), weights[i]));
+    }
+    set = new ReplicaSet(list, 2);
+    return set;
+  }
+
+  private static DruidDataSource dataSource(String name) {
+    DruidDataSource ds = new DruidDataSource();
+    ds.setName(name);
+    ds.setUrl("jdbc:h2:mem:" + name);
+    ds.setUsername("sa");
+    ds.setPassword("");
+    ds.setValidationQuery("SELECT 'x'");
+    return ds;
+  }
+
+  private int[] count(ReplicaSet set, int times) {
+    ReplicaSet.Replica[] replicas = set.getReplicas();
+    int[] counts = new int[replicas.length];
+    for (int i = 0; i < times; i++) {
+      ReplicaSet.Replica r = set.pick();
+      for (int j = 0; j < replicas.length; j++) {
+        if (replicas[j] == r) {
+          counts[j]++;
+        }
+      }
+    }
+    return counts;
+  }
+
+  @Test
+  public void testWeight() throws Exception {
+    int[] counts = count(build(3, 1, 1), 10000);
+    assertTrue(counts[0] > counts[1] && counts[0] > counts[2]);
+    assertTrue(counts[1] > 0 && counts[2] > 0);
+  }
+
+  @Test
+  public void testLatency() throws Exception {
+    ReplicaSet set = build(1, 1);
+    set.getReplicas()[0].record(TimeUnit.MILLISECONDS.toNanos(50));
+    set.getReplicas()[1].record(TimeUnit.MILLISECONDS.toNanos(1));
+    int[] counts = count(set, 1000);
+    assertTrue(counts[1] > counts[0] * 2);
+  }
+
+  @Test
+  public void testInFlight() throws Exception {
+    ReplicaSet set = build(1, 1);
+    ReplicaSet.Replica busy = set.getReplicas()[0];
+    for (int i = 0; i < 10; i++) {
+      busy.acquire();
+    }
+    int[] counts = count(set, 1000);
+    assertTrue(counts[1] > counts[0] * 2);
+    busy.release();
+    assertEquals(9, busy.getInFlight());
+    // 应用持有连接的时间不算延迟
+    assertEquals(0, busy.getLatency());
+  }
+
+  @Test
+  public void testEjectAndRecover() throws Exception {
+    ReplicaSet set = build(1, 1);
+    ReplicaSet.Replica first = set.getReplicas()[0];
+    set.probe(1000);
+    assertTrue(first.isHealthy());
+    // 延迟取探活语句的耗时
+    assertTrue(first.getLatency() > 0);
+
+    // 连续失败两次才摘掉
+    first.getDataSource().setEnable(false);
+    set.probe(1000);
+    assertTrue(first.isHealthy());
+    set.probe(1000);
+    assertFalse(first.isHealthy());
+    assertEquals(0, count(set, 100)[0]);
+
+    first.getDataSource().setEnable(true);
+    set.probe(1000);
+    assertTrue(first.isHealthy());
+    assertTrue(count(set, 1000)[0] > 0);
+
+    // 全部不可用时由调用方改用主库
+    set.mark(first, false);
+    set.mark(first, false);
+    set.mark(set.getReplicas()[1], false);
+    set.mark(set.getReplicas()[1], false);
+    assertNull(set.pick());
+  }
+
+  @Test
+  public void testLag() throws Exception {
+    ReplicaSet set = build(1, 1);
+    master = dataSource("heartbeat_master");
+    ReplicaSet.Replica fresh = set.getReplicas()[0];
+    ReplicaSet.Replica stale = set.getReplicas()[1];
+    Heartbeat heartbeat = new Heartbeat("mybatis_heartbeat", "test@localhost", 1000);
+    heartbeat.check(master, set, 1000);
+    replicate(fresh);
+    replicate(stale);
+    heartbeat.check(master, set, 1000);
+    assertEquals(0, fresh.getLag());
+    assertEquals(0, stale.getLag());
+
+    // 注入延迟：stale停在5秒以前
+    replicate(fresh);
+    execute(stale.getDataSource(), "update mybatis_heartbeat set ts = ts - 5000");
+    heartbeat.check(master, set, 1000);
+    assertFalse(fresh.isLagging());
+    assertTrue(stale.isLagging());
+    assertTrue(stale.getLag() >= 5000);
+    assertEquals(1000, count(set, 1000)[0]);
+
+    // 追上以后恢复
+    replicate(stale);
+    heartbeat.check(master, set, 1000);
+    assertFalse(stale.isLagging());
+    assertTrue(count(set, 1000)[1] > 0);
+  }
+
+  /**
+   * 模拟主从复制：把主库上的心跳复制到读库
+   */
+  private void replicate(ReplicaSet.Replica replica) throws Exception {
+    execute(replica.getDataSource(), "create table if not exists mybatis_heartbeat (id varchar(128) primary key, ts bigint not null)");
+    Connection from = master.getConnection();
+    Connection to = replica.getDataSource().getConnection();
+    try {
+      ResultSet rs = from.createStatement().executeQuery("select id, ts from mybatis_heartbeat");
+      PreparedStatement ps = to.prepareStatement("merge into mybatis_heartbeat key(id) values (?, ?)");
+      while (rs.next()) {
+        ps.setString(1, rs.getString(1));
+        ps.setLong(2, rs.getLong(2));
+        ps.executeUpdate();
+      }
+    } finally {
+      CloseableUtil.closeQuietly(from);
+      CloseableUtil.closeQuietly(to);
+    }
+  }
+
+  private static void execute(DruidDataSource ds, String sql) throws Exception {
+    Connection conn = ds.getConnection();
+    try {
+      Statement stmt = conn.createStatement();
+      stmt.execute(sql);
+    } finally {
+      CloseableUtil.closeQuietly(conn);
+    }
+  }
+}
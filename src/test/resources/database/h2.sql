@@ -17,3 +17,30 @@ CREATE TABLE IF NOT EXISTS test_dynamic (
   `group`     VARCHAR                        NOT NULL,
   modify_date TIMESTAMP
 );
+
+CREATE TABLE IF NOT EXISTS test_batch (
+  id      INT PRIMARY KEY AUTO_INCREMENT NOT NULL,
+  `name`  VARCHAR(60)                    NOT NULL,
+  score   INT DEFAULT -1
+);
+
+CREATE TABLE IF NOT EXISTS test_shard_20260101 (
+  id          INT PRIMARY KEY AUTO_INCREMENT NOT NULL,
+  `name`      VARCHAR(60)                    NOT NULL,
+  score       INT,
+  create_time TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS test_shard_20260102 (
+  id          INT PRIMARY KEY AUTO_INCREMENT NOT NULL,
+  `name`      VARCHAR(60)                    NOT NULL,
+  score       INT,
+  create_time TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS test_shard_20260103 (
+  id          INT PRIMARY KEY AUTO_INCREMENT NOT NULL,
+  `name`      VARCHAR(60)                    NOT NULL,
+  score       INT,
+  create_time TIMESTAMP
+);